@@ -0,0 +1,67 @@
+package com.game013.codeanalyzer.benchmark;
+
+import com.game013.codeanalyzer.pipeline.TokenBuffer;
+import com.game013.codeanalyzer.preprocessor.MacroPreprocessor;
+import org.apache.commons.io.IOUtils;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The checked-in C++ submissions listed in {@code corpus/index.txt}, with their tokens. Sources defining macros are
+ * pre-processed first, as the analysis does, so every stage sees the code it sees in production. Benchmarks process
+ * the whole corpus on every invocation.
+ */
+@State(Scope.Benchmark)
+public class Corpus {
+
+	private static final String DIRECTORY = "/corpus/";
+
+	private final List<String> sources = new ArrayList<>();
+
+	private final List<TokenBuffer> tokens = new ArrayList<>();
+
+	@Setup
+	public void load() throws IOException {
+
+		for (String name : IOUtils.readLines(resource("index.txt"), StandardCharsets.UTF_8)) {
+			if (name.trim().isEmpty()) {
+				continue;
+			}
+			try (InputStream in = resource(name.trim())) {
+				String source = IOUtils.toString(in, StandardCharsets.UTF_8);
+				if (source.contains("#define")) {
+					source = MacroPreprocessor.process(source);
+				}
+				sources.add(source);
+				tokens.add(TokenBuffer.lex(source));
+			}
+		}
+	}
+
+	public List<String> getSources() {
+
+		return sources;
+	}
+
+	public List<TokenBuffer> getTokens() {
+
+		return tokens;
+	}
+
+	private InputStream resource(String name) throws IOException {
+
+		InputStream in = Corpus.class.getResourceAsStream(DIRECTORY + name);
+		if (in == null) {
+			throw new IOException("Missing corpus file " + name);
+		}
+		return in;
+	}
+
+}
@@ -0,0 +1,44 @@
+package com.game013.codeanalyzer.benchmark;
+
+import com.game013.codeanalyzer.pipeline.TokenBuffer;
+import com.game013.cppgrammar.CPP14Lexer;
+import org.antlr.v4.runtime.CharStreams;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LexerBenchmark {
+
+	@Benchmark
+	public void lexer(Corpus corpus, Blackhole blackhole) {
+
+		for (String source : corpus.getSources()) {
+			blackhole.consume(new CPP14Lexer(CharStreams.fromString(source)).getAllTokens());
+		}
+	}
+
+	/**
+	 * Lexing plus the token text offsets and symbol table the later stages share.
+	 */
+	@Benchmark
+	public void tokenBuffer(Corpus corpus, Blackhole blackhole) {
+
+		for (String source : corpus.getSources()) {
+			TokenBuffer tokens = TokenBuffer.lex(source);
+			blackhole.consume(tokens.getSymbols());
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+package com.game013.codeanalyzer.benchmark;
+
+import com.game013.codeanalyzer.listener.CppListener;
+import com.game013.codeanalyzer.pipeline.ParseStage;
+import com.game013.codeanalyzer.pipeline.TokenBuffer;
+import org.antlr.v4.runtime.tree.ParseTree;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Walk of the {@link CppListener} over parse trees built once, so only the metric computation is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ListenerBenchmark {
+
+	private final List<ParseTree> trees = new ArrayList<>();
+
+	@Setup
+	public void parse(Corpus corpus) {
+
+		ParseStage parseStage = new ParseStage(true);
+		for (TokenBuffer tokens : corpus.getTokens()) {
+			trees.add(parseStage.apply(tokens));
+		}
+	}
+
+	@Benchmark
+	public void walk(Corpus corpus, Blackhole blackhole) {
+
+		List<TokenBuffer> tokens = corpus.getTokens();
+		for (int i = 0; i < trees.size(); ++i) {
+			CppListener listener = new CppListener((long) i, 100, 80, 5.0, 40, 10, 200, 20, tokens.get(i));
+			ParseTreeWalker.DEFAULT.walk(listener, trees.get(i));
+			blackhole.consume(listener.getResult());
+		}
+	}
+
+}
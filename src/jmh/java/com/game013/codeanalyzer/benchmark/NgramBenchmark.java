@@ -0,0 +1,121 @@
+package com.game013.codeanalyzer.benchmark;
+
+import com.game013.codeanalyzer.ngram.NgramCounts;
+import com.game013.codeanalyzer.ngram.NgramExtractor;
+import com.game013.codeanalyzer.ngram.NgramSegmentStore;
+import com.game013.codeanalyzer.ngram.NgramSegmentWriter;
+import com.game013.codeanalyzer.pipeline.TokenBuffer;
+import org.apache.commons.io.FileUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extraction of the n-grams of the corpus tokens, their encoding and decoding, and appends to the segment store.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NgramBenchmark {
+
+	private static final long SEGMENT_SIZE = 64L << 20;
+
+	private static final int APPEND_BATCH_SIZE = 500;
+
+	private final NgramExtractor extractor = new NgramExtractor(2, 5);
+
+	private final List<NgramCounts> counts = new ArrayList<>();
+
+	private final List<NgramSegmentStore.Record> records = new ArrayList<>();
+
+	private Path directory;
+
+	private NgramSegmentWriter writer;
+
+	private long submissionId;
+
+	@Setup
+	public void extract(Corpus corpus) {
+
+		for (TokenBuffer tokens : corpus.getTokens()) {
+			NgramCounts nGrams = extractor.extract(tokens.getTypes());
+			counts.add(nGrams);
+			records.add(NgramSegmentStore.Record.of(nGrams));
+		}
+	}
+
+	@Setup(Level.Iteration)
+	public void openWriter() throws IOException {
+
+		directory = Files.createTempDirectory("ngram-benchmark");
+		writer = new NgramSegmentWriter(directory, SEGMENT_SIZE, false);
+	}
+
+	@TearDown(Level.Iteration)
+	public void closeWriter() throws IOException {
+
+		writer.close();
+		FileUtils.deleteDirectory(directory.toFile());
+	}
+
+	@Benchmark
+	public void extraction(Corpus corpus, Blackhole blackhole) {
+
+		for (TokenBuffer tokens : corpus.getTokens()) {
+			blackhole.consume(extractor.extract(tokens.getTypes()));
+		}
+	}
+
+	@Benchmark
+	public void encode(Blackhole blackhole) {
+
+		for (NgramCounts nGrams : counts) {
+			blackhole.consume(NgramSegmentStore.Record.of(nGrams));
+		}
+	}
+
+	@Benchmark
+	public void decode(Blackhole blackhole) {
+
+		for (NgramSegmentStore.Record record : records) {
+			blackhole.consume(record.counts());
+		}
+	}
+
+	/**
+	 * Every append is written to the segment file right away, so iterations are a fixed batch of corpus passes rather
+	 * than a time, to bound the size of the store.
+	 */
+	@Benchmark
+	@BenchmarkMode(Mode.SingleShotTime)
+	@OutputTimeUnit(TimeUnit.MILLISECONDS)
+	@Warmup(iterations = 5, batchSize = APPEND_BATCH_SIZE)
+	@Measurement(iterations = 10, batchSize = APPEND_BATCH_SIZE)
+	public void append() {
+
+		for (NgramSegmentStore.Record record : records) {
+			writer.append(++submissionId, record);
+		}
+	}
+
+}
@@ -0,0 +1,65 @@
+package com.game013.codeanalyzer.benchmark;
+
+import com.game013.codeanalyzer.pipeline.ParseStage;
+import com.game013.codeanalyzer.pipeline.TokenBuffer;
+import com.game013.cppgrammar.CPP14Parser;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the corpus tokens. The DFA cache of the parser is static, so as in a long analysis run it is warm after
+ * the first invocations.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParserBenchmark {
+
+	private final ParseStage parseStage = new ParseStage(true);
+
+	@Benchmark
+	public void translationUnit(Corpus corpus, Prediction prediction, Blackhole blackhole) {
+
+		for (TokenBuffer tokens : corpus.getTokens()) {
+			CPP14Parser parser = new CPP14Parser(tokens.newTokenStream());
+			parser.removeErrorListeners();
+			parser.getInterpreter().setPredictionMode(prediction.mode);
+			blackhole.consume(parser.translationunit());
+		}
+	}
+
+	/**
+	 * The two stage parse of the analysis: SLL, and LL only for the sources SLL fails on.
+	 */
+	@Benchmark
+	public void parseStage(Corpus corpus, Blackhole blackhole) {
+
+		for (TokenBuffer tokens : corpus.getTokens()) {
+			blackhole.consume(parseStage.apply(tokens));
+		}
+	}
+
+	@State(Scope.Benchmark)
+	public static class Prediction {
+
+		@Param({"SLL", "LL"})
+		public PredictionMode mode;
+
+	}
+
+}
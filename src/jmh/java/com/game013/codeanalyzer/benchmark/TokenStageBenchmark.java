@@ -0,0 +1,53 @@
+package com.game013.codeanalyzer.benchmark;
+
+import com.game013.codeanalyzer.pipeline.EntropyStage;
+import com.game013.codeanalyzer.pipeline.TokenBuffer;
+import com.game013.codeanalyzer.pipeline.TokenDistributionStage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entropy and keyword and operator distributions over the corpus tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenStageBenchmark {
+
+	private final EntropyStage entropyStage = new EntropyStage();
+
+	private final TokenDistributionStage keywordsStage = TokenDistributionStage.keywords();
+
+	private final TokenDistributionStage operatorsStage = TokenDistributionStage.operators();
+
+	@Benchmark
+	public void entropy(Corpus corpus, Blackhole blackhole) {
+
+		for (TokenBuffer tokens : corpus.getTokens()) {
+			blackhole.consume(entropyStage.apply(tokens));
+		}
+	}
+
+	@Benchmark
+	public void distributions(Corpus corpus, Blackhole blackhole) {
+
+		for (TokenBuffer tokens : corpus.getTokens()) {
+			blackhole.consume(keywordsStage.apply(tokens));
+			blackhole.consume(operatorsStage.apply(tokens));
+		}
+	}
+
+}
@@ -0,0 +1,71 @@
+#include <cstdio>
+#include <vector>
+#include <queue>
+#include <algorithm>
+
+using namespace std;
+
+const long long INF = 1e18;
+
+struct Edge {
+    int to;
+    long long weight;
+};
+
+vector<vector<Edge>> graph;
+vector<long long> dist;
+vector<int> parent;
+
+void dijkstra(int source) {
+    int n = graph.size();
+    dist.assign(n, INF);
+    parent.assign(n, -1);
+    priority_queue<pair<long long, int>, vector<pair<long long, int>>, greater<pair<long long, int>>> pq;
+    dist[source] = 0;
+    pq.push({0, source});
+    while (!pq.empty()) {
+        long long d = pq.top().first;
+        int u = pq.top().second;
+        pq.pop();
+        if (d != dist[u]) {
+            continue;
+        }
+        for (const Edge &edge : graph[u]) {
+            if (dist[u] + edge.weight < dist[edge.to]) {
+                dist[edge.to] = dist[u] + edge.weight;
+                parent[edge.to] = u;
+                pq.push({dist[edge.to], edge.to});
+            }
+        }
+    }
+}
+
+int main() {
+    int n, m;
+    if (scanf("%d %d", &n, &m) != 2) {
+        return 0;
+    }
+    graph.resize(n + 1);
+    for (int i = 0; i < m; ++i) {
+        int a, b;
+        long long w;
+        scanf("%d %d %lld", &a, &b, &w);
+        graph[a].push_back({b, w});
+        graph[b].push_back({a, w});
+    }
+    dijkstra(1);
+    if (dist[n] == INF) {
+        puts("-1");
+        return 0;
+    }
+    vector<int> path;
+    for (int v = n; v != -1; v = parent[v]) {
+        path.push_back(v);
+    }
+    reverse(path.begin(), path.end());
+    for (int v : path) {
+        printf("%d ", v);
+    }
+    printf("\n");
+    return 0;
+}
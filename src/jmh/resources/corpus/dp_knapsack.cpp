@@ -0,0 +1,52 @@
+#include <iostream>
+#include <vector>
+#include <cstring>
+
+using namespace std;
+
+const int MAX_N = 105;
+const int MAX_W = 100005;
+
+int n, capacity;
+int weight[MAX_N], value[MAX_N];
+long long memo[MAX_N][1005];
+long long best[MAX_W];
+
+long long solve(int i, int remaining) {
+    if (i == n) {
+        return 0;
+    }
+    long long &result = memo[i][remaining];
+    if (result != -1) {
+        return result;
+    }
+    result = solve(i + 1, remaining);
+    if (weight[i] <= remaining) {
+        result = max(result, value[i] + solve(i + 1, remaining - weight[i]));
+    }
+    return result;
+}
+
+int main() {
+    cin >> n >> capacity;
+    for (int i = 0; i < n; i++) {
+        cin >> weight[i] >> value[i];
+    }
+    if (capacity <= 1000) {
+        memset(memo, -1, sizeof(memo));
+        cout << solve(0, capacity) << endl;
+        return 0;
+    }
+    // Iterative table when the capacity is too large for the memo
+    for (int i = 0; i < n; i++) {
+        for (int w = capacity; w >= weight[i]; w--) {
+            best[w] = max(best[w], best[w - weight[i]] + value[i]);
+        }
+    }
+    long long answer = 0;
+    for (int w = 0; w <= capacity; w++) {
+        answer = answer > best[w] ? answer : best[w];
+    }
+    cout << answer << endl;
+    return 0;
+}
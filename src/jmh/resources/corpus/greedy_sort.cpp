@@ -0,0 +1,46 @@
+#include <bits/stdc++.h>
+
+using namespace std;
+
+typedef long long ll;
+typedef pair<int, int> pii;
+
+struct Segment {
+    int left, right, index;
+
+    bool operator<(const Segment &other) const {
+        if (right != other.right) {
+            return right < other.right;
+        }
+        return left > other.left;
+    }
+};
+
+int main() {
+    ios_base::sync_with_stdio(false);
+    cin.tie(nullptr);
+
+    int n;
+    cin >> n;
+    vector<Segment> segments(n);
+    for (int i = 0; i < n; ++i) {
+        cin >> segments[i].left >> segments[i].right;
+        segments[i].index = i + 1;
+    }
+    sort(segments.begin(), segments.end());
+
+    vector<int> chosen;
+    int last = INT_MIN;
+    for (const Segment &segment : segments) {
+        if (segment.left > last) {
+            chosen.push_back(segment.index);
+            last = segment.right;
+        }
+    }
+
+    cout << chosen.size() << "\n";
+    for (size_t i = 0; i < chosen.size(); ++i) {
+        cout << chosen[i] << (i + 1 == chosen.size() ? '\n' : ' ');
+    }
+    return 0;
+}
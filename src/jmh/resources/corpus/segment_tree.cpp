@@ -0,0 +1,92 @@
+#include <bits/stdc++.h>
+#define FOR(i, a, b) for (int i = (a); i < (b); ++i)
+#define ALL(v) (v).begin(), (v).end()
+#define MOD 1000000007
+
+using namespace std;
+
+template <typename T>
+class SegmentTree {
+private:
+    int size;
+    vector<T> tree;
+    vector<T> lazy;
+
+    void push(int node, int left, int right) {
+        if (lazy[node] != 0) {
+            tree[node] += lazy[node] * (right - left + 1);
+            if (left != right) {
+                lazy[2 * node] += lazy[node];
+                lazy[2 * node + 1] += lazy[node];
+            }
+            lazy[node] = 0;
+        }
+    }
+
+    void update(int node, int left, int right, int from, int to, T value) {
+        push(node, left, right);
+        if (right < from || to < left) {
+            return;
+        }
+        if (from <= left && right <= to) {
+            lazy[node] += value;
+            push(node, left, right);
+            return;
+        }
+        int middle = (left + right) >> 1;
+        update(2 * node, left, middle, from, to, value);
+        update(2 * node + 1, middle + 1, right, from, to, value);
+        tree[node] = tree[2 * node] + tree[2 * node + 1];
+    }
+
+    T query(int node, int left, int right, int from, int to) {
+        if (right < from || to < left) {
+            return 0;
+        }
+        push(node, left, right);
+        if (from <= left && right <= to) {
+            return tree[node];
+        }
+        int middle = (left + right) >> 1;
+        return query(2 * node, left, middle, from, to) + query(2 * node + 1, middle + 1, right, from, to);
+    }
+
+public:
+    explicit SegmentTree(int n) : size(n), tree(4 * n, 0), lazy(4 * n, 0) {}
+
+    void update(int from, int to, T value) {
+        update(1, 0, size - 1, from, to, value);
+    }
+
+    T query(int from, int to) {
+        return query(1, 0, size - 1, from, to);
+    }
+};
+
+int main() {
+    int n, q;
+    scanf("%d %d", &n, &q);
+    SegmentTree<long long> st(n);
+    FOR(i, 0, n) {
+        long long x;
+        scanf("%lld", &x);
+        st.update(i, i, x);
+    }
+    vector<long long> answers;
+    while (q--) {
+        int type, l, r;
+        scanf("%d %d %d", &type, &l, &r);
+        --l, --r;
+        if (type == 1) {
+            long long v;
+            scanf("%lld", &v);
+            st.update(l, r, v);
+        } else {
+            answers.push_back(st.query(l, r) % MOD);
+        }
+    }
+    for (long long answer : answers) {
+        printf("%lld\n", answer);
+    }
+    return 0;
+}
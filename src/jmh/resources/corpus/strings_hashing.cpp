@@ -0,0 +1,57 @@
+#include <bits/stdc++.h>
+
+using namespace std;
+
+namespace hashing {
+    const unsigned long long BASE = 131;
+
+    class PolynomialHash {
+    public:
+        explicit PolynomialHash(const string &text) : prefix(text.size() + 1), power(text.size() + 1) {
+            power[0] = 1;
+            for (size_t i = 0; i < text.size(); ++i) {
+                prefix[i + 1] = prefix[i] * BASE + static_cast<unsigned char>(text[i]);
+                power[i + 1] = power[i] * BASE;
+            }
+        }
+
+        unsigned long long get(int from, int length) const {
+            return prefix[from + length] - prefix[from] * power[length];
+        }
+
+    private:
+        vector<unsigned long long> prefix;
+        vector<unsigned long long> power;
+    };
+}
+
+int longestRepeated(const string &text) {
+    hashing::PolynomialHash hash(text);
+    int low = 0, high = (int) text.size();
+    while (low < high) {
+        int middle = (low + high + 1) / 2;
+        unordered_set<unsigned long long> seen;
+        bool found = false;
+        for (int i = 0; i + middle <= (int) text.size() && !found; ++i) {
+            found = !seen.insert(hash.get(i, middle)).second;
+        }
+        if (found) {
+            low = middle;
+        } else {
+            high = middle - 1;
+        }
+    }
+    return low;
+}
+
+int main() {
+    int t;
+    cin >> t;
+    while (t-- > 0) {
+        string text;
+        cin >> text;
+        auto count = [&](char c) { return std::count(text.begin(), text.end(), c); };
+        cout << longestRepeated(text) << ' ' << count('a') << '\n';
+    }
+    return 0;
+}
@@ -38,6 +38,13 @@ public class CodeAnalyzerApplication implements CommandLineRunner {
 				break;
 			case 3:
 				service.ngramMeanings();
+				break;
+			case 4:
+				service.analyzeCodeAndNgrams();
+				break;
+			case 5:
+				service.exportCorpus();
+				break;
 			default:
 				break;
 		}
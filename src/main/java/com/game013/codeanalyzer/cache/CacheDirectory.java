@@ -0,0 +1,107 @@
+package com.game013.codeanalyzer.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Persistent tier of the analysis cache: one small file per source, spread in subdirectories by the first byte of its
+ * key. Files are replaced atomically, so a reader never sees a partial entry.
+ */
+@Slf4j
+public class CacheDirectory {
+
+	private static final int LOCK_STRIPES = 64;
+
+	private final Path directory;
+
+	/**
+	 * Saves of the same key read, merge and replace its file under the same lock, so results saved at the same time,
+	 * such as the metric and the n-grams of a source, are never lost.
+	 */
+	private final Object[] locks = new Object[LOCK_STRIPES];
+
+	public CacheDirectory(Path directory) {
+
+		this.directory = directory;
+		for (int i = 0; i < locks.length; ++i) {
+			locks[i] = new Object();
+		}
+	}
+
+	public CachedAnalysis find(ContentKey key) {
+
+		try (InputStream in = Files.newInputStream(file(key))) {
+			return CachedAnalysis.read(new DataInputStream(new BufferedInputStream(in)));
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			log.warn("Error reading cached analysis [{}]", key, e);
+		}
+		return null;
+	}
+
+	/**
+	 * Saves an entry, keeping the results of the stored entry that the new one does not have.
+	 */
+	public void save(ContentKey key, CachedAnalysis entry) {
+
+		synchronized (locks[Math.floorMod(key.hashCode(), LOCK_STRIPES)]) {
+			replace(key, entry);
+		}
+	}
+
+	private void replace(ContentKey key, CachedAnalysis entry) {
+
+		CachedAnalysis stored = find(key);
+		// A metric that is not persisted must not hide the stored one
+		CachedAnalysis merged = stored == null ? entry :
+				entry.isTransient() ? entry.merge(stored) : stored.merge(entry);
+		Path file = file(key);
+		Path temporary = null;
+		try {
+			Files.createDirectories(file.getParent());
+			temporary = Files.createTempFile(file.getParent(), key.toString(), ".tmp");
+			try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temporary))) {
+				DataOutputStream data = new DataOutputStream(out);
+				merged.write(data);
+				data.flush();
+			}
+			Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			temporary = null;
+		} catch (IOException e) {
+			log.warn("Error saving cached analysis [{}]", key, e);
+		} finally {
+			deleteQuietly(temporary);
+		}
+	}
+
+	private void deleteQuietly(Path temporary) {
+
+		if (temporary == null) {
+			return;
+		}
+		try {
+			Files.deleteIfExists(temporary);
+		} catch (IOException e) {
+			log.warn("Error deleting [{}]", temporary, e);
+		}
+	}
+
+	private Path file(ContentKey key) {
+
+		String name = key.toString();
+		return directory.resolve(name.substring(0, 2)).resolve(name + ".bin");
+	}
+
+}
@@ -0,0 +1,136 @@
+package com.game013.codeanalyzer.cache;
+
+import com.game013.codeanalyzer.constant.MetricField;
+import com.game013.codeanalyzer.constant.MetricStatus;
+import com.game013.codeanalyzer.model.Metric;
+import com.game013.codeanalyzer.ngram.NgramSegmentStore;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Results of analyzing a source code, independent of the submission it came from: the metric values and the encoded
+ * n-gram histograms, either of them missing when it has not been computed.
+ */
+public class CachedAnalysis {
+
+	private static final int MAGIC = 0x43414E41;
+
+	private static final byte VERSION = 2;
+
+	/**
+	 * Approximate heap size of a metric, used to bound the memory of the cache.
+	 */
+	private static final int METRIC_WEIGHT = 64 + MetricField.values().length * 24;
+
+	private final Metric metric;
+
+	private final NgramSegmentStore.Record nGrams;
+
+	public CachedAnalysis(Metric metric, NgramSegmentStore.Record nGrams) {
+
+		this.metric = metric != null ? copy(metric, null) : null;
+		this.nGrams = nGrams;
+	}
+
+	public boolean hasMetric() {
+
+		return metric != null;
+	}
+
+	/**
+	 * Metric of the source for the given submission, or {@code null} when it has not been computed.
+	 */
+	public Metric getMetric(long submissionId) {
+
+		return metric != null ? copy(metric, submissionId) : null;
+	}
+
+	public NgramSegmentStore.Record getNgrams() {
+
+		return nGrams;
+	}
+
+	/**
+	 * Entry with the results of both entries, preferring the ones of {@code other}.
+	 */
+	public CachedAnalysis merge(CachedAnalysis other) {
+
+		if (other == null) {
+			return this;
+		}
+		return new CachedAnalysis(other.metric != null ? other.metric : metric,
+				other.nGrams != null ? other.nGrams : nGrams);
+	}
+
+	public int weight() {
+
+		return (metric != null ? METRIC_WEIGHT : 0) + (nGrams != null ? nGrams.buffer().capacity() : 0);
+	}
+
+	/**
+	 * Whether the metric only holds for this run, as budget overruns depend on the load of the machine.
+	 */
+	boolean isTransient() {
+
+		return metric != null && metric.getStatus() == MetricStatus.BUDGET_EXCEEDED;
+	}
+
+	void write(DataOutput out) throws IOException {
+
+		out.writeInt(MAGIC);
+		out.writeByte(VERSION);
+		boolean writeMetric = metric != null && !isTransient();
+		out.writeBoolean(writeMetric);
+		if (writeMetric) {
+			out.writeUTF(metric.getStatus().name());
+			out.writeBoolean(metric.getCompleted());
+			out.writeBoolean(metric.getRequirePreProcessing());
+			out.writeInt(metric.getInvalidFields() != null ? metric.getInvalidFields() : -1);
+			for (MetricField field : MetricField.values()) {
+				Double value = field.get(metric);
+				// Valid metrics are never NaN, so it stands for the values that were not computed
+				out.writeDouble(value != null ? value : Double.NaN);
+			}
+		}
+		out.writeBoolean(nGrams != null);
+		if (nGrams != null) {
+			ByteBuffer buffer = nGrams.buffer();
+			out.writeInt(buffer.remaining());
+			out.write(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+		}
+	}
+
+	static CachedAnalysis read(DataInput in) throws IOException {
+
+		if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+			return null;
+		}
+		Metric metric = null;
+		if (in.readBoolean()) {
+			metric = Metric.builder().status(MetricStatus.valueOf(in.readUTF())).completed(in.readBoolean())
+					.requirePreProcessing(in.readBoolean()).build();
+			int invalidFields = in.readInt();
+			metric.setInvalidFields(invalidFields >= 0 ? invalidFields : null);
+			for (MetricField field : MetricField.values()) {
+				double value = in.readDouble();
+				field.set(metric, Double.isNaN(value) ? null : value);
+			}
+		}
+		NgramSegmentStore.Record nGrams = null;
+		if (in.readBoolean()) {
+			byte[] buffer = new byte[in.readInt()];
+			in.readFully(buffer);
+			nGrams = NgramSegmentStore.Record.wrap(ByteBuffer.wrap(buffer));
+		}
+		return new CachedAnalysis(metric, nGrams);
+	}
+
+	private static Metric copy(Metric metric, Long submissionId) {
+
+		return metric.toBuilder().submissionId(submissionId).build();
+	}
+
+}
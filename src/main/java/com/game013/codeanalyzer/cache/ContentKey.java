@@ -0,0 +1,77 @@
+package com.game013.codeanalyzer.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.regex.Pattern;
+
+/**
+ * 128 bit content hash of a source code, normalized so sources that only differ in ways the analysis ignores share the
+ * same key.
+ */
+public final class ContentKey {
+
+	private static final Pattern TRAILING_LINE_BREAKS = Pattern.compile("\n+$");
+
+	private final long high;
+
+	private final long low;
+
+	private ContentKey(long high, long low) {
+
+		this.high = high;
+		this.low = low;
+	}
+
+	public static ContentKey of(String sourceCode) {
+
+		byte[] hash;
+		try {
+			hash = MessageDigest.getInstance("SHA-256").digest(normalize(sourceCode).getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(hash);
+		return new ContentKey(buffer.getLong(), buffer.getLong());
+	}
+
+	/**
+	 * Turns CRLF line breaks into LF and drops the trailing line breaks, which change neither the tokens nor the lines
+	 * of a source. Lone CRs are kept because the lexer does not end directives on them, and sources with raw string
+	 * literals are left untouched because their line breaks are part of the literal.
+	 */
+	static String normalize(String sourceCode) {
+
+		if (sourceCode.contains("R\"")) {
+			return sourceCode;
+		}
+		return TRAILING_LINE_BREAKS.matcher(sourceCode.replace("\r\n", "\n")).replaceFirst("");
+	}
+
+	@Override
+	public boolean equals(Object other) {
+
+		if (this == other) {
+			return true;
+		}
+		if (!(other instanceof ContentKey)) {
+			return false;
+		}
+		ContentKey key = (ContentKey) other;
+		return high == key.high && low == key.low;
+	}
+
+	@Override
+	public int hashCode() {
+
+		return (int) high;
+	}
+
+	@Override
+	public String toString() {
+
+		return String.format("%016x%016x", high, low);
+	}
+
+}
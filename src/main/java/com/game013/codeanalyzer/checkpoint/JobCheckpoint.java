@@ -0,0 +1,229 @@
+package com.game013.codeanalyzer.checkpoint;
+
+import com.game013.codeanalyzer.ngram.LongIntHashMap;
+import com.game013.codeanalyzer.ngram.NgramCounts;
+import com.game013.codeanalyzer.ngram.NgramHistogramCodec;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Properties;
+
+/**
+ * Progress of a job over the submissions, ordered by id, saved in its own directory. A checkpoint is the last
+ * submission id whose whole page was processed, the location of the n-gram segment store at that point and a snapshot
+ * of the global n-gram counts. Every file is written aside and moved into place, the checkpoint file last, so a crash
+ * at any point leaves the previous checkpoint intact.
+ */
+@Slf4j
+public class JobCheckpoint {
+
+	private static final String CHECKPOINT_FILE = "checkpoint.properties";
+
+	private static final String COUNTS_FILE = "counts-%d-%s.ngh";
+
+	/**
+	 * Matches count files and the temporaries left by a crash while writing one.
+	 */
+	private static final String COUNTS_GLOB = "counts-*";
+
+	private final Path directory;
+
+	private final long intervalNanos;
+
+	private long lastId;
+
+	private long segmentLocation = -1L;
+
+	private boolean completed;
+
+	private boolean exists;
+
+	private long lastSave = System.nanoTime();
+
+	private JobCheckpoint(Path directory, long intervalMs) {
+
+		this.directory = directory;
+		this.intervalNanos = intervalMs * 1_000_000;
+	}
+
+	/**
+	 * Loads the checkpoint of the job in {@code directory}, which is empty when the job never saved one.
+	 */
+	public static JobCheckpoint load(Path directory, long intervalMs) {
+
+		JobCheckpoint checkpoint = new JobCheckpoint(directory, intervalMs);
+		Path file = directory.resolve(CHECKPOINT_FILE);
+		if (!Files.exists(file)) {
+			return checkpoint;
+		}
+		Properties properties = new Properties();
+		try (InputStream in = Files.newInputStream(file)) {
+			properties.load(in);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		checkpoint.lastId = Long.parseLong(properties.getProperty("last-id"));
+		checkpoint.segmentLocation = Long.parseLong(properties.getProperty("segment-location"));
+		checkpoint.completed = Boolean.parseBoolean(properties.getProperty("completed"));
+		checkpoint.exists = true;
+		return checkpoint;
+	}
+
+	public boolean exists() {
+
+		return exists;
+	}
+
+	public long getLastId() {
+
+		return lastId;
+	}
+
+	/**
+	 * Location of the n-gram segment store to resume from, negative when the job does not write one.
+	 */
+	public long getSegmentLocation() {
+
+		return segmentLocation;
+	}
+
+	public boolean isCompleted() {
+
+		return completed;
+	}
+
+	/**
+	 * Whether the checkpoint interval elapsed since the last one was saved.
+	 */
+	public boolean isDue() {
+
+		return System.nanoTime() - lastSave >= intervalNanos;
+	}
+
+	/**
+	 * Global counts of the checkpoint, or {@code null} when it has none for the given orders.
+	 */
+	public NgramCounts loadCounts(int minN, int maxN) {
+
+		NgramCounts counts = new NgramCounts(minN, maxN);
+		for (int n = minN; n <= maxN; ++n) {
+			Path file = countsFile(lastId, n);
+			if (!exists || !Files.exists(file)) {
+				return null;
+			}
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				counts.set(n, NgramHistogramCodec.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size())));
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Saves a checkpoint after the submission {@code lastId}, with the global counts when the job keeps them.
+	 */
+	public void save(long lastId, long segmentLocation, boolean completed, NgramCounts counts) {
+
+		long start = System.nanoTime();
+		try {
+			Files.createDirectories(directory);
+			if (counts != null) {
+				for (int n = counts.getMinN(); n <= counts.getMaxN(); ++n) {
+					writeCounts(countsFile(lastId, n), n, counts.get(n));
+				}
+			}
+
+			Properties properties = new Properties();
+			properties.setProperty("last-id", Long.toString(lastId));
+			properties.setProperty("segment-location", Long.toString(segmentLocation));
+			properties.setProperty("completed", Boolean.toString(completed));
+			Path temporary = directory.resolve(CHECKPOINT_FILE + ".tmp");
+			try (OutputStream out = Files.newOutputStream(temporary)) {
+				properties.store(out, null);
+			}
+			Files.move(temporary, directory.resolve(CHECKPOINT_FILE), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+
+			deleteCounts(lastId);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		this.lastId = lastId;
+		this.segmentLocation = segmentLocation;
+		this.completed = completed;
+		this.exists = true;
+		this.lastSave = System.nanoTime();
+		log.info("Checkpoint of [{}] saved after submission [{}] in [{}] ms", directory.getFileName(), lastId,
+				(lastSave - start) / 1_000_000);
+	}
+
+	/**
+	 * Forgets the saved progress, so the job starts from the first submission.
+	 */
+	public void clear() {
+
+		try {
+			Files.deleteIfExists(directory.resolve(CHECKPOINT_FILE));
+			deleteCounts(-1L);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		lastId = 0L;
+		segmentLocation = -1L;
+		completed = false;
+		exists = false;
+	}
+
+	/**
+	 * Writes counts to a temporary file moved over the given one, which the saved checkpoint may point to when the new
+	 * one is after the same submission.
+	 */
+	private void writeCounts(Path file, int n, LongIntHashMap histogram) throws IOException {
+
+		ByteBuffer content = NgramHistogramCodec.encode(n, histogram);
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (content.hasRemaining()) {
+				channel.write(content);
+			}
+			channel.force(true);
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Deletes the counts of every checkpoint but {@code keptId}.
+	 */
+	private void deleteCounts(long keptId) throws IOException {
+
+		if (!Files.isDirectory(directory)) {
+			return;
+		}
+		String kept = String.format("counts-%d-", keptId);
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, COUNTS_GLOB)) {
+			for (Path file : files) {
+				if (!file.getFileName().toString().startsWith(kept)) {
+					Files.delete(file);
+				}
+			}
+		}
+	}
+
+	private Path countsFile(long lastId, int n) {
+
+		return directory.resolve(String.format(COUNTS_FILE, lastId, NgramCounts.orderName(n)));
+	}
+
+}
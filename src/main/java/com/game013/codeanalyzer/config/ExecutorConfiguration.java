@@ -0,0 +1,49 @@
+package com.game013.codeanalyzer.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Thread pools of the analysis. CPU bound work (lexing, parsing, walking trees and counting n-grams) runs in a pool
+ * sized to the cores, and blocking work (external processes, files and database) runs in a separate pool so it never
+ * leaves cores idle. Both pools have bounded queues and run tasks in the submitting thread when they are full, which
+ * throttles whoever produces the work.
+ */
+@Configuration
+public class ExecutorConfiguration {
+
+	public static final String CPU_EXECUTOR = "cpuExecutor";
+
+	public static final String IO_EXECUTOR = "ioExecutor";
+
+	@Bean(CPU_EXECUTOR)
+	public ThreadPoolTaskExecutor cpuExecutor(@Value("${program.executor.cpu.threads}") int threads,
+			@Value("${program.executor.cpu.queue-capacity}") int queueCapacity) {
+
+		return newExecutor("cpu-", threads > 0 ? threads : Runtime.getRuntime().availableProcessors(), queueCapacity);
+	}
+
+	@Bean(IO_EXECUTOR)
+	public ThreadPoolTaskExecutor ioExecutor(@Value("${program.executor.io.threads}") int threads,
+			@Value("${program.executor.io.queue-capacity}") int queueCapacity) {
+
+		return newExecutor("io-", threads, queueCapacity);
+	}
+
+	private ThreadPoolTaskExecutor newExecutor(String prefix, int threads, int queueCapacity) {
+
+		ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+		executor.setThreadNamePrefix(prefix);
+		executor.setCorePoolSize(threads);
+		executor.setMaxPoolSize(threads);
+		executor.setQueueCapacity(queueCapacity);
+		executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+		executor.setWaitForTasksToCompleteOnShutdown(true);
+		return executor;
+	}
+
+}
@@ -0,0 +1,29 @@
+package com.game013.codeanalyzer.constant;
+
+/**
+ * What a run does with the checkpoint left by the previous run of the same job.
+ */
+public enum CheckpointMode {
+
+	/**
+	 * Ignores it and processes every submission again.
+	 */
+	FRESH,
+
+	/**
+	 * Continues an interrupted run after its last checkpoint, and starts over after a completed one.
+	 */
+	RESUME,
+
+	/**
+	 * Continues after the last checkpoint even when that run completed, so only the submissions added since then are
+	 * processed.
+	 */
+	INCREMENTAL;
+
+	public boolean resumes(boolean completed) {
+
+		return this == INCREMENTAL || this == RESUME && !completed;
+	}
+
+}
@@ -0,0 +1,83 @@
+package com.game013.codeanalyzer.constant;
+
+import static com.game013.codeanalyzer.constant.MetricField.*;
+
+/**
+ * Reasons for a metric to be NaN or infinite, each with the fields it always invalidates, so the causes of an invalid
+ * submission can be told from its bitmask of invalid fields alone.
+ */
+public enum MetricFailureCause {
+
+	/**
+	 * No function definitions: the averages per function divide by zero.
+	 */
+	NO_FUNCTIONS(CYCLOMATIC_COMPLEXITY.mask() | AVG_FUNCTION_PARAMETER_COUNT.mask() | AVG_FUNCTION_LENGTH.mask()),
+
+	/**
+	 * An empty parse tree, without nodes to average the branch factor over.
+	 */
+	NO_AST_NODES(BRANCH_FACTOR.mask()),
+
+	/**
+	 * No lines of code: the averages per line divide by zero.
+	 */
+	NO_LINES(AVG_PERIOD_COUNT.mask() | AVG_PARENTHESIS_COUNT.mask() | AVG_IDENTIFIER_COUNT.mask() |
+			AVG_LINE_LENGTH.mask()),
+
+	/**
+	 * No identifiers: their average length is 0 / 0 and the logarithm of their count is infinite.
+	 */
+	NO_IDENTIFIERS(AVG_IDENTIFIER_LENGTH.mask() | LN_LITERAL_COUNT_FILE_LENGTH.mask()),
+
+	/**
+	 * No keywords, so the logarithm of their count is infinite.
+	 */
+	NO_KEYWORDS(LN_KEYWORD_FILE_LENGTH.mask()),
+
+	/**
+	 * No Halstead operands: the difficulty divides 0 by 0 distinct operands.
+	 */
+	NO_OPERANDS(HALSTEAD_DIFFICULTY.mask() | HALSTEAD_EFFORT.mask()),
+
+	/**
+	 * No Halstead operators nor operands, so the volume multiplies 0 by an infinite logarithm.
+	 */
+	NO_VOCABULARY(HALSTEAD_VOLUME.mask() | HALSTEAD_EFFORT.mask() | POSNETT_READABILITY_METRIC.mask());
+
+	private static final MetricFailureCause[] VALUES = values();
+
+	private final int fields;
+
+	MetricFailureCause(int fields) {
+
+		this.fields = fields;
+	}
+
+	/**
+	 * Bitmask of the fields this cause invalidates.
+	 */
+	public int getFields() {
+
+		return fields;
+	}
+
+	public boolean explains(int invalidFields) {
+
+		return (invalidFields & fields) == fields;
+	}
+
+	/**
+	 * Invalid fields that no cause explains.
+	 */
+	public static int unexplained(int invalidFields) {
+
+		int unexplained = invalidFields;
+		for (MetricFailureCause cause : VALUES) {
+			if (cause.explains(invalidFields)) {
+				unexplained &= ~cause.fields;
+			}
+		}
+		return unexplained;
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.game013.codeanalyzer.constant;
+
+import com.game013.codeanalyzer.model.Metric;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Numeric values of a {@link Metric}, in declaration order, with direct accessors so they can be copied and
+ * serialized without reflection. Sets of fields are int bitmasks with the bit of every field at its ordinal.
+ */
+public enum MetricField {
+
+	AST_NODE_COUNT(Metric::getAstNodeCount, Metric::setAstNodeCount),
+	AVG_FUNCTION_LENGTH(Metric::getAvgFunctionLength, Metric::setAvgFunctionLength),
+	AVG_FUNCTION_PARAMETER_COUNT(Metric::getAvgFunctionParameterCount, Metric::setAvgFunctionParameterCount),
+	AVG_IDENTIFIER_COUNT(Metric::getAvgIdentifierCount, Metric::setAvgIdentifierCount),
+	AVG_IDENTIFIER_LENGTH(Metric::getAvgIdentifierLength, Metric::setAvgIdentifierLength),
+	AVG_LINE_LENGTH(Metric::getAvgLineLength, Metric::setAvgLineLength),
+	AVG_PERIOD_COUNT(Metric::getAvgPeriodCount, Metric::setAvgPeriodCount),
+	AVG_PARENTHESIS_COUNT(Metric::getAvgParenthesisCount, Metric::setAvgParenthesisCount),
+	BRANCH_FACTOR(Metric::getBranchFactor, Metric::setBranchFactor),
+	CYCLOMATIC_COMPLEXITY(Metric::getCyclomaticComplexity, Metric::setCyclomaticComplexity),
+	ENTROPY(Metric::getEntropy, Metric::setEntropy),
+	HALSTEAD_DIFFICULTY(Metric::getHalsteadDifficulty, Metric::setHalsteadDifficulty),
+	HALSTEAD_EFFORT(Metric::getHalsteadEffort, Metric::setHalsteadEffort),
+	HALSTEAD_VOLUME(Metric::getHalsteadVolume, Metric::setHalsteadVolume),
+	KEYWORD_DISTRIBUTION(Metric::getKeywordDistribution, Metric::setKeywordDistribution),
+	LINES_OF_CODE(Metric::getLinesOfCode, Metric::setLinesOfCode),
+	LN_KEYWORD_FILE_LENGTH(Metric::getLnKeywordFileLength, Metric::setLnKeywordFileLength),
+	LN_LITERAL_COUNT_FILE_LENGTH(Metric::getLnLiteralCountFileLength, Metric::setLnLiteralCountFileLength),
+	MAX_DEPTH_NESTED_BLOCKS(Metric::getMaxDepthNestedBlocks, Metric::setMaxDepthNestedBlocks),
+	MAX_IDENTIFIER_COUNT(Metric::getMaxIdentifierCount, Metric::setMaxIdentifierCount),
+	MAX_IDENTIFIER_LENGTH(Metric::getMaxIdentifierLength, Metric::setMaxIdentifierLength),
+	MAX_LINE_LENGTH(Metric::getMaxLineLength, Metric::setMaxLineLength),
+	POSNETT_READABILITY_METRIC(Metric::getPosnettReadabilityMetric, Metric::setPosnettReadabilityMetric);
+
+	private final Function<Metric, Double> getter;
+
+	private final BiConsumer<Metric, Double> setter;
+
+	private static final MetricField[] VALUES = values();
+
+	MetricField(Function<Metric, Double> getter, BiConsumer<Metric, Double> setter) {
+
+		this.getter = getter;
+		this.setter = setter;
+	}
+
+	public Double get(Metric metric) {
+
+		return getter.apply(metric);
+	}
+
+	public void set(Metric metric, Double value) {
+
+		setter.accept(metric, value);
+	}
+
+	public int mask() {
+
+		return 1 << ordinal();
+	}
+
+	public boolean in(int fields) {
+
+		return (fields & mask()) != 0;
+	}
+
+	public static boolean isInvalid(double value) {
+
+		return Double.isNaN(value) || Double.isInfinite(value);
+	}
+
+	/**
+	 * Bitmask of the fields of a metric that are NaN or infinite. Fields that were not computed are not invalid.
+	 */
+	public static int invalidFields(Metric metric) {
+
+		int invalid = 0;
+		for (MetricField field : VALUES) {
+			Double value = field.get(metric);
+			if (value != null && isInvalid(value)) {
+				invalid |= field.mask();
+			}
+		}
+		return invalid;
+	}
+
+}
@@ -0,0 +1,7 @@
+package com.game013.codeanalyzer.constant;
+
+public enum MetricStatus {
+
+	COMPLETED, INVALID, BUDGET_EXCEEDED;
+
+}
@@ -0,0 +1,17 @@
+package com.game013.codeanalyzer.constant;
+
+public enum NgramCountMode {
+
+	EXACT, APPROXIMATE, BOTH;
+
+	public boolean isExact() {
+
+		return this != APPROXIMATE;
+	}
+
+	public boolean isApproximate() {
+
+		return this != EXACT;
+	}
+
+}
@@ -0,0 +1,10 @@
+package com.game013.codeanalyzer.exception;
+
+public class MissingNgramVocabularyError extends RuntimeException {
+
+	public MissingNgramVocabularyError(String message) {
+
+		super(message);
+	}
+
+}
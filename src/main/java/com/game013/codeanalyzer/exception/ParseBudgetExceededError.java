@@ -0,0 +1,10 @@
+package com.game013.codeanalyzer.exception;
+
+public class ParseBudgetExceededError extends RuntimeException {
+
+	public ParseBudgetExceededError(String message) {
+
+		super(message);
+	}
+
+}
@@ -0,0 +1,10 @@
+package com.game013.codeanalyzer.exception;
+
+public class UnsupportedPreProcessorError extends RuntimeException {
+
+	public UnsupportedPreProcessorError(String message) {
+
+		super(message);
+	}
+
+}
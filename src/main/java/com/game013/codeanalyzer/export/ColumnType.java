@@ -0,0 +1,22 @@
+package com.game013.codeanalyzer.export;
+
+/**
+ * Primitive type of the values of a column, stored little endian.
+ */
+public enum ColumnType {
+
+	LONG(Long.BYTES), DOUBLE(Double.BYTES), INT(Integer.BYTES);
+
+	private final int size;
+
+	ColumnType(int size) {
+
+		this.size = size;
+	}
+
+	public int getSize() {
+
+		return size;
+	}
+
+}
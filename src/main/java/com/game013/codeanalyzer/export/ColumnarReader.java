@@ -0,0 +1,127 @@
+package com.game013.codeanalyzer.export;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads a table written by {@link ColumnarWriter}. Every column is memory mapped on demand and returned as a primitive
+ * buffer with a value per row, so scanning a column reads only its file and never builds objects per row. Columns are
+ * limited to 2GB each.
+ */
+public class ColumnarReader {
+
+	private final Path directory;
+
+	private final long rows;
+
+	private final Map<String, ColumnType> columns;
+
+	private final Map<String, List<String>> dictionaries;
+
+	private ColumnarReader(Path directory, long rows, Map<String, ColumnType> columns,
+			Map<String, List<String>> dictionaries) {
+
+		this.directory = directory;
+		this.rows = rows;
+		this.columns = columns;
+		this.dictionaries = dictionaries;
+	}
+
+	public static ColumnarReader open(Path directory) {
+
+		try (DataInputStream schema = new DataInputStream(new BufferedInputStream(Files.newInputStream(
+				directory.resolve(ColumnarWriter.SCHEMA_FILE))))) {
+			if (schema.readInt() != ColumnarWriter.MAGIC || schema.readByte() != ColumnarWriter.VERSION) {
+				throw new IOException("Unsupported columnar table in " + directory);
+			}
+			long rows = schema.readLong();
+			int count = schema.readInt();
+			Map<String, ColumnType> columns = new LinkedHashMap<>();
+			Map<String, List<String>> dictionaries = new HashMap<>();
+			for (int i = 0; i < count; ++i) {
+				String name = schema.readUTF();
+				columns.put(name, ColumnType.values()[schema.readByte()]);
+				String[] labels = new String[schema.readInt()];
+				for (int j = 0; j < labels.length; ++j) {
+					labels[j] = schema.readUTF();
+				}
+				if (labels.length > 0) {
+					dictionaries.put(name, Collections.unmodifiableList(Arrays.asList(labels)));
+				}
+			}
+			return new ColumnarReader(directory, rows, Collections.unmodifiableMap(columns), dictionaries);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public long getRows() {
+
+		return rows;
+	}
+
+	/**
+	 * Type of every column by name, in file order.
+	 */
+	public Map<String, ColumnType> getColumns() {
+
+		return columns;
+	}
+
+	/**
+	 * Labels of the values of a column, the label of value i at index i, empty when the column has no dictionary.
+	 */
+	public List<String> getDictionary(String name) {
+
+		return dictionaries.getOrDefault(name, Collections.emptyList());
+	}
+
+	public LongBuffer longs(String name) {
+
+		return map(name, ColumnType.LONG).asLongBuffer();
+	}
+
+	public DoubleBuffer doubles(String name) {
+
+		return map(name, ColumnType.DOUBLE).asDoubleBuffer();
+	}
+
+	public IntBuffer ints(String name) {
+
+		return map(name, ColumnType.INT).asIntBuffer();
+	}
+
+	private MappedByteBuffer map(String name, ColumnType type) {
+
+		ColumnType actual = columns.get(name);
+		if (actual != type) {
+			throw new IllegalArgumentException(String.format("Column [%s] is %s, not %s", name, actual, type));
+		}
+		try (FileChannel channel = FileChannel.open(ColumnarWriter.columnFile(directory, name),
+				StandardOpenOption.READ)) {
+			MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, rows * type.getSize());
+			buffer.order(ByteOrder.LITTLE_ENDIAN);
+			return buffer;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+}
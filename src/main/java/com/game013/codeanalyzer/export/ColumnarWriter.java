@@ -0,0 +1,181 @@
+package com.game013.codeanalyzer.export;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes a table one row at a time into a directory with a file per column, holding the primitive values of every row
+ * back to back, and a schema file with the number of rows and the name, type and dictionary of every column. Column
+ * files can be memory mapped and scanned at disk speed by {@link ColumnarReader}.
+ * <p>
+ * The schema is only written by {@link #finish()}, so a directory with a partial export has no schema and can not be
+ * opened.
+ */
+public class ColumnarWriter implements Closeable {
+
+	static final String SCHEMA_FILE = "schema.bin";
+
+	static final int MAGIC = 0x434F4C53;
+
+	static final byte VERSION = 2;
+
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final Path directory;
+
+	private final String[] names;
+
+	private final ColumnType[] types;
+
+	private final OutputStream[] outputs;
+
+	private final Map<String, List<String>> dictionaries = new HashMap<>();
+
+	private final ByteBuffer value = ByteBuffer.allocate(Long.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+	private int column;
+
+	private long rows;
+
+	/**
+	 * @param columns type of every column by name, in the order their values are written
+	 */
+	public ColumnarWriter(Path directory, LinkedHashMap<String, ColumnType> columns) {
+
+		this.directory = directory;
+		this.names = columns.keySet().toArray(new String[0]);
+		this.types = columns.values().toArray(new ColumnType[0]);
+		this.outputs = new OutputStream[names.length];
+		try {
+			Files.createDirectories(directory);
+			Files.deleteIfExists(directory.resolve(SCHEMA_FILE));
+			for (int i = 0; i < names.length; ++i) {
+				outputs[i] = new BufferedOutputStream(Files.newOutputStream(columnFile(directory, names[i])),
+						BUFFER_SIZE);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Names of the values of an int column that encodes labels, the label of value i at index i.
+	 */
+	public ColumnarWriter dictionary(String name, List<String> labels) {
+
+		if (!Arrays.asList(names).contains(name)) {
+			throw new IllegalArgumentException(String.format("Unknown column [%s]", name));
+		}
+		dictionaries.put(name, new ArrayList<>(labels));
+		return this;
+	}
+
+	public ColumnarWriter putLong(long value) {
+
+		this.value.putLong(0, value);
+		return write(ColumnType.LONG);
+	}
+
+	public ColumnarWriter putDouble(double value) {
+
+		this.value.putDouble(0, value);
+		return write(ColumnType.DOUBLE);
+	}
+
+	public ColumnarWriter putInt(int value) {
+
+		this.value.putInt(0, value);
+		return write(ColumnType.INT);
+	}
+
+	/**
+	 * Ends a row, which must have a value for every column.
+	 */
+	public void endRow() {
+
+		if (column != outputs.length) {
+			throw new IllegalStateException(String.format("Row [%d] has [%d] values of [%d] columns", rows, column,
+					outputs.length));
+		}
+		column = 0;
+		++rows;
+	}
+
+	public long getRows() {
+
+		return rows;
+	}
+
+	/**
+	 * Closes the column files and writes the schema, completing the table.
+	 */
+	public void finish() {
+
+		close();
+		try (DataOutputStream schema = new DataOutputStream(new BufferedOutputStream(
+				Files.newOutputStream(directory.resolve(SCHEMA_FILE))))) {
+			schema.writeInt(MAGIC);
+			schema.writeByte(VERSION);
+			schema.writeLong(rows);
+			schema.writeInt(names.length);
+			for (int i = 0; i < names.length; ++i) {
+				schema.writeUTF(names[i]);
+				schema.writeByte(types[i].ordinal());
+				List<String> labels = dictionaries.getOrDefault(names[i], Collections.emptyList());
+				schema.writeInt(labels.size());
+				for (String label : labels) {
+					schema.writeUTF(label);
+				}
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	@Override
+	public void close() {
+
+		try {
+			for (OutputStream output : outputs) {
+				output.close();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	static Path columnFile(Path directory, String name) {
+
+		return directory.resolve(name + ".col");
+	}
+
+	private ColumnarWriter write(ColumnType type) {
+
+		if (column >= types.length || types[column] != type) {
+			throw new IllegalArgumentException(String.format("Value %s does not match column [%d] of [%d]", type,
+					column, types.length));
+		}
+		try {
+			outputs[column++].write(value.array(), 0, type.getSize());
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return this;
+	}
+
+}
@@ -1,38 +1,44 @@
 package com.game013.codeanalyzer.listener;
 
+import com.game013.codeanalyzer.constant.MetricField;
 import com.game013.codeanalyzer.model.Metric;
+import com.game013.codeanalyzer.pipeline.SymbolTable;
+import com.game013.codeanalyzer.pipeline.TokenBuffer;
+import com.game013.codeanalyzer.pipeline.TokenText;
 import com.game013.cppgrammar.CPP14BaseListener;
 import com.game013.cppgrammar.CPP14Parser;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.antlr.v4.runtime.ParserRuleContext;
-import org.antlr.v4.runtime.RuleContext;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.TerminalNode;
 
 import java.util.*;
-import java.util.stream.Collectors;
+
+import static com.game013.codeanalyzer.constant.MetricField.*;
 
 @RequiredArgsConstructor
 @Slf4j
 public class CppListener extends CPP14BaseListener {
 
 	/**
-	 * Map to include node depth information.
+	 * Occurrences of Halstead operators and operands, keyed by the text of their tokens.
 	 */
-	private Map<RuleContext, Integer> nodeDepth = new HashMap<>();
-
-	private Map<String, Double> halsteadOperatorsMap = new HashMap<>();
+	private Map<TokenText, Double> halsteadOperatorsMap = new HashMap<>();
 
-	private Map<String, Double> halsteadOperandsMap = new HashMap<>();
+	private Map<TokenText, Double> halsteadOperandsMap = new HashMap<>();
 
 	/**
-	 * Set of nodes to be updated.
+	 * Occurrences of every identifier, by symbol.
 	 */
-	private Set<RuleContext> nodesToBeUpdated = new HashSet<>();
+	private int[] identifierCounts;
 
-	private List<String> identifiers = new ArrayList<>();
+	private int identifierCount = 0;
 
-	private Map<String, Double> identifiersCount = new HashMap<>();
+	private long identifierLengthSum = 0;
+
+	private int maxIdentifierLength = 0;
 
 	private double functionCount = 0;
 
@@ -42,7 +48,12 @@ public class CppListener extends CPP14BaseListener {
 
 	private double conditionalBranches = 0;
 
-	private long maxDepth = 0;
+	/**
+	 * Number of nested blocks currently open, and its maximum so far.
+	 */
+	private int blockDepth = 0;
+
+	private int maxBlockDepth = 0;
 
 	private double flowControlCount = 0;
 
@@ -62,6 +73,11 @@ public class CppListener extends CPP14BaseListener {
 
 	private boolean addToFunction = false;
 
+	/**
+	 * Bitmask of the metric fields of the result that are NaN or infinite.
+	 */
+	private int invalidFields = 0;
+
 	private final Long submissionId;
 
 	private final double linesOfCode;
@@ -78,14 +94,14 @@ public class CppListener extends CPP14BaseListener {
 
 	private final double distinctOperator;
 
+	private final TokenBuffer tokens;
+
 	public Metric getResult() {
 
 		double opDistribution = operatorDistribution + rightSift + rightSiftAssign;
 		double distinctOp = distinctOperator + (rightSift > 0 ? 1 : 0) + (rightSiftAssign > 0 ? 1 : 0);
 
-		Comparator<? super Map.Entry<RuleContext, Integer>> maxValueComparator = Comparator.comparing(Map.Entry::getValue);
-		Optional<Map.Entry<RuleContext, Integer>> maxValue = nodeDepth.entrySet().stream().max(maxValueComparator);
-		double maxDepthNestedBlocks = maxValue.map(e -> (double) e.getValue()).orElse(0.0);
+		double maxDepthNestedBlocks = maxBlockDepth;
 
 		double branchingFactor = childrenCount / nodeCount;
 		double cyclomaticComplexity = (flowControlCount + conditionalBranches + jumpStatementCount) / functionCount;
@@ -93,13 +109,17 @@ public class CppListener extends CPP14BaseListener {
 		double avgPeriodCount = totalPeriodCount / linesOfCode;
 		double avgParenthesisCount = totalParenthesesCount / linesOfCode;
 
-		double avgIdentifierLength = identifiers.stream().mapToDouble(String::length).sum() / identifiers.size();
-		double maxIdentifierLength = identifiers.stream().mapToDouble(String::length).max().orElse(0.0);
-		double avgIdentifierCount = identifiers.size() / linesOfCode;
-		double maxIdentifierCount = identifiersCount.values().stream().max(Comparator.naturalOrder()).orElse(0.0);
+		double avgIdentifierLength = (double) identifierLengthSum / identifierCount;
+		double avgIdentifierCount = identifierCount / linesOfCode;
+		double maxIdentifierCount = 0;
+		if (identifierCounts != null) {
+			for (int count : identifierCounts) {
+				maxIdentifierCount = Math.max(maxIdentifierCount, count);
+			}
+		}
 
 		double lnKeywordFileLength = Math.log(distinctKeyword / characterCount);
-		double lnLiteralCountFileLength = Math.log(identifiers.size() / characterCount);
+		double lnLiteralCountFileLength = Math.log(identifierCount / characterCount);
 		double avgLineLength = characterCount / linesOfCode;
 		double avgFunctionParameterCount = parameterCount / functionCount;
 		double avgFunctionLength = characterCount / functionCount;
@@ -117,35 +137,57 @@ public class CppListener extends CPP14BaseListener {
 		double halsteadDifficulty = (lowerN1 / 2.0) * (capitalN2 / lowerN2);
 		double halsteadEffort = halsteadVolume * halsteadDifficulty;
 
-		return Metric.builder().astNodeCount(nodeCount).avgFunctionLength(avgFunctionLength)
-				.avgFunctionParameterCount(avgFunctionParameterCount).avgIdentifierCount(avgIdentifierCount)
-				.avgIdentifierLength(avgIdentifierLength).avgLineLength(avgLineLength).avgPeriodCount(avgPeriodCount)
-				.avgParenthesisCount(avgParenthesisCount).branchFactor(branchingFactor).cyclomaticComplexity(cyclomaticComplexity)
-				.keywordDistribution(keywordDistribution).halsteadDifficulty(halsteadDifficulty)
-				.halsteadEffort(halsteadEffort).halsteadVolume(halsteadVolume).linesOfCode(linesOfCode)
-				.lnKeywordFileLength(lnKeywordFileLength).lnLiteralCountFileLength(lnLiteralCountFileLength)
-				.maxDepthNestedBlocks(maxDepthNestedBlocks).maxIdentifierCount(maxIdentifierCount)
-				.maxIdentifierLength(maxIdentifierLength).maxLineLength(maxLineLength).entropy(entropy)
-				.posnettReadabilityMetric(getPosnettReadabilityMetric(halsteadVolume, linesOfCode, entropy))
-				.submissionId(submissionId).build();
+		// Every value is checked as a primitive while the result is built
+		invalidFields = 0;
+		return Metric.builder().astNodeCount(check(AST_NODE_COUNT, nodeCount))
+				.avgFunctionLength(check(AVG_FUNCTION_LENGTH, avgFunctionLength))
+				.avgFunctionParameterCount(check(AVG_FUNCTION_PARAMETER_COUNT, avgFunctionParameterCount))
+				.avgIdentifierCount(check(AVG_IDENTIFIER_COUNT, avgIdentifierCount))
+				.avgIdentifierLength(check(AVG_IDENTIFIER_LENGTH, avgIdentifierLength))
+				.avgLineLength(check(AVG_LINE_LENGTH, avgLineLength))
+				.avgPeriodCount(check(AVG_PERIOD_COUNT, avgPeriodCount))
+				.avgParenthesisCount(check(AVG_PARENTHESIS_COUNT, avgParenthesisCount))
+				.branchFactor(check(BRANCH_FACTOR, branchingFactor))
+				.cyclomaticComplexity(check(CYCLOMATIC_COMPLEXITY, cyclomaticComplexity))
+				.keywordDistribution(check(KEYWORD_DISTRIBUTION, keywordDistribution))
+				.halsteadDifficulty(check(HALSTEAD_DIFFICULTY, halsteadDifficulty))
+				.halsteadEffort(check(HALSTEAD_EFFORT, halsteadEffort))
+				.halsteadVolume(check(HALSTEAD_VOLUME, halsteadVolume))
+				.linesOfCode(check(LINES_OF_CODE, linesOfCode))
+				.lnKeywordFileLength(check(LN_KEYWORD_FILE_LENGTH, lnKeywordFileLength))
+				.lnLiteralCountFileLength(check(LN_LITERAL_COUNT_FILE_LENGTH, lnLiteralCountFileLength))
+				.maxDepthNestedBlocks(check(MAX_DEPTH_NESTED_BLOCKS, maxDepthNestedBlocks))
+				.maxIdentifierCount(check(MAX_IDENTIFIER_COUNT, maxIdentifierCount))
+				.maxIdentifierLength(check(MAX_IDENTIFIER_LENGTH, maxIdentifierLength))
+				.maxLineLength(check(MAX_LINE_LENGTH, maxLineLength)).entropy(check(ENTROPY, entropy))
+				.posnettReadabilityMetric(check(POSNETT_READABILITY_METRIC,
+						getPosnettReadabilityMetric(halsteadVolume, linesOfCode, entropy)))
+				.invalidFields(invalidFields).submissionId(submissionId).build();
+	}
+
+	private double check(MetricField field, double value) {
+
+		if (MetricField.isInvalid(value)) {
+			invalidFields |= field.mask();
+		}
+		return value;
 	}
 
-	private void onEnter(RuleContext ctx) {
+	private void onEnter() {
 
-		nodeDepth.put(ctx, nodesToBeUpdated.size() + 1);
-		nodesToBeUpdated.add(ctx);
+		maxBlockDepth = Math.max(maxBlockDepth, ++blockDepth);
 	}
 
-	private void onExit(RuleContext ctx) {
+	private void onExit() {
 
-		nodesToBeUpdated.remove(ctx);
+		--blockDepth;
 	}
 
 	@Override
 	public void enterTranslationunit(CPP14Parser.TranslationunitContext ctx) {
 		super.enterTranslationunit(ctx);
-		String code = ctx.getText();
-		characterCount = code.length();
+		// Length of getText() of the whole tree, which ends with the "<EOF>" text of the EOF token of the lexer
+		characterCount = text(ctx).length() + ctx.EOF().getText().length();
 	}
 
 	@Override
@@ -163,76 +205,76 @@ public class CppListener extends CPP14BaseListener {
 	@Override
 	public void enterSelectionstatement(CPP14Parser.SelectionstatementContext ctx) {
 		super.enterSelectionstatement(ctx);
-		onEnter(ctx);
+		onEnter();
 		++flowControlCount;
 	}
 
 	@Override
 	public void exitSelectionstatement(CPP14Parser.SelectionstatementContext ctx) {
 		super.exitSelectionstatement(ctx);
-		onExit(ctx);
+		onExit();
 	}
 
 	@Override
 	public void enterIterationstatement(CPP14Parser.IterationstatementContext ctx) {
 		super.enterIterationstatement(ctx);
-		onEnter(ctx);
+		onEnter();
 		++flowControlCount;
 	}
 
 	@Override
 	public void exitIterationstatement(CPP14Parser.IterationstatementContext ctx) {
 		super.exitIterationstatement(ctx);
-		onExit(ctx);
+		onExit();
 	}
 
 	@Override
 	public void enterFunctiondefinition(CPP14Parser.FunctiondefinitionContext ctx) {
 		super.enterFunctiondefinition(ctx);
-		onEnter(ctx);
+		onEnter();
 	}
 
 	@Override
 	public void exitFunctiondefinition(CPP14Parser.FunctiondefinitionContext ctx) {
 		super.exitFunctiondefinition(ctx);
-		onExit(ctx);
+		onExit();
 		++functionCount;
 	}
 
 	@Override
 	public void enterTryblock(CPP14Parser.TryblockContext ctx) {
 		super.enterTryblock(ctx);
-		onEnter(ctx);
+		onEnter();
 	}
 
 	@Override
 	public void exitTryblock(CPP14Parser.TryblockContext ctx) {
 		super.exitTryblock(ctx);
-		onExit(ctx);
+		onExit();
 	}
 
 	@Override
 	public void enterHandlerseq(CPP14Parser.HandlerseqContext ctx) {
 		super.enterHandlerseq(ctx);
-		onEnter(ctx);
+		onEnter();
 	}
 
 	@Override
 	public void exitHandlerseq(CPP14Parser.HandlerseqContext ctx) {
 		super.exitHandlerseq(ctx);
-		onExit(ctx);
+		onExit();
 	}
 
 	@Override
 	public void enterTypespecifierseq(CPP14Parser.TypespecifierseqContext ctx) {
 		super.enterTypespecifierseq(ctx);
-		onEnter(ctx);
+		onEnter();
 	}
 
 	@Override
 	public void exitTypespecifierseq(CPP14Parser.TypespecifierseqContext ctx) {
 		super.exitTypespecifierseq(ctx);
-		onExit(ctx);
+		onExit();
 	}
 
 	@Override
@@ -248,26 +290,42 @@ public class CppListener extends CPP14BaseListener {
 		if (ctx.getChildCount() > 0) {
 			++nodeCount;
 		}
-		maxDepth = Math.max(maxDepth, ctx.depth());
-
-		List<String> extractedIdentifiers = ctx.getTokens(CPP14Parser.Identifier).stream().map(TerminalNode::getText)
-				.collect(Collectors.toList());
-
-		identifiers.addAll(extractedIdentifiers);
-
-		for (String identifier : extractedIdentifiers) {
-			identifiersCount.merge(identifier, 1.0, (oldValue, one) -> oldValue + one);
+		// Single pass over the terminal children, without building token lists
+		for (int i = 0; i < ctx.getChildCount(); ++i) {
+			ParseTree child = ctx.getChild(i);
+			if (!(child instanceof TerminalNode)) {
+				continue;
+			}
+			Token token = ((TerminalNode) child).getSymbol();
+			switch (token.getType()) {
+				case CPP14Parser.Identifier:
+					countIdentifier(token.getTokenIndex());
+					break;
+				case CPP14Parser.Dot:
+					++totalPeriodCount;
+					break;
+				case CPP14Parser.LeftParen:
+				case CPP14Parser.LeftBrace:
+					++totalParenthesesCount;
+					break;
+				default:
+					break;
+			}
 		}
+	}
 
-		List<String> extractedDots = ctx.getTokens(CPP14Parser.Dot).stream().map(TerminalNode::getText)
-				.collect(Collectors.toList());
-		totalPeriodCount += extractedDots.size();
+	private void countIdentifier(int tokenIndex) {
 
-		List<String> extractedParentheses = ctx.getTokens(CPP14Parser.LeftParen).stream().map(TerminalNode::getText)
-				.collect(Collectors.toList());
-		List<String> extractedBraces = ctx.getTokens(CPP14Parser.LeftBrace).stream().map(TerminalNode::getText)
-				.collect(Collectors.toList());
-		totalParenthesesCount += extractedParentheses.size() + extractedBraces.size();
+		SymbolTable symbols = tokens.getSymbols();
+		int symbol = symbols.symbol(tokenIndex);
+		if (identifierCounts == null) {
+			identifierCounts = new int[symbols.size()];
+		}
+		int length = symbols.name(symbol).length();
+		++identifierCounts[symbol];
+		++identifierCount;
+		identifierLengthSum += length;
+		maxIdentifierLength = Math.max(maxIdentifierLength, length);
 	}
 
 	@Override
@@ -299,9 +357,9 @@ public class CppListener extends CPP14BaseListener {
 		super.enterIdentifierexpression(ctx);
 		if (ctx.primaryexpression().idexpression() != null || ctx.primaryexpression().literal() != null) {
 			if (addToFunction) {
-				addOneToCountMap(halsteadOperatorsMap, ctx.getText());
+				addOneToCountMap(halsteadOperatorsMap, text(ctx));
 			} else {
-				addOneToCountMap(halsteadOperandsMap, ctx.getText());
+				addOneToCountMap(halsteadOperandsMap, text(ctx));
 			}
 		}
 		addToFunction = false;
@@ -318,19 +376,24 @@ public class CppListener extends CPP14BaseListener {
 		super.enterOtherdeclaration(ctx);
 
 		if (addToFunction) {
-			addOneToCountMap(halsteadOperatorsMap, ctx.getText());
+			addOneToCountMap(halsteadOperatorsMap, text(ctx));
 			addToFunction = false;
 		} else {
-			addOneToCountMap(halsteadOperandsMap, ctx.getText());
+			addOneToCountMap(halsteadOperandsMap, text(ctx));
 		}
 	}
 
-	private Double getPosnettReadabilityMetric(Double halsteadVolume, Double linesOfCode, Double entropy) {
+	private double getPosnettReadabilityMetric(double halsteadVolume, double linesOfCode, double entropy) {
 
 		return 8.87 - 0.033 * halsteadVolume + 0.40 * linesOfCode - 1.5 * entropy;
 	}
 
-	private void addOneToCountMap(Map<String, Double> map, String key) {
+	private TokenText text(ParserRuleContext ctx) {
+
+		return tokens.text(ctx.getStart().getTokenIndex(), ctx.getStop().getTokenIndex());
+	}
+
+	private void addOneToCountMap(Map<TokenText, Double> map, TokenText key) {
 
 		map.merge(key, 1.0, (val, one) -> val + one);
 	}
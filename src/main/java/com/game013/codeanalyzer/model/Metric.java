@@ -1,18 +1,21 @@
 package com.game013.codeanalyzer.model;
 
+import com.game013.codeanalyzer.constant.MetricField;
+import com.game013.codeanalyzer.constant.MetricStatus;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import javax.persistence.Entity;
+import javax.persistence.EnumType;
+import javax.persistence.Enumerated;
 import javax.persistence.Id;
 import javax.validation.constraints.NotNull;
-import java.lang.reflect.Field;
 
 @Entity
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class Metric {
@@ -25,9 +28,21 @@ public class Metric {
 	@Builder.Default
 	private Boolean completed = Boolean.TRUE;
 
+	/**
+	 * Outcome of the analysis, null in the rows saved before it was recorded.
+	 */
+	@Enumerated(EnumType.STRING)
+	@Builder.Default
+	private MetricStatus status = MetricStatus.COMPLETED;
+
 	@NotNull
 	private Boolean requirePreProcessing;
 
+	/**
+	 * Bitmask of the {@link MetricField}s that were NaN or infinite, null when the metric was not computed.
+	 */
+	private Integer invalidFields;
+
 	private Double astNodeCount;
 
 	private Double avgFunctionLength;
@@ -84,21 +99,7 @@ public class Metric {
 
 	public boolean isValid() {
 
-		boolean result = true;
-		for (Field field : Metric.class.getDeclaredFields()) {
-			try {
-				Object value = field.get(this);
-				if (value instanceof Double) {
-					if (Double.isInfinite((Double) value) || Double.isNaN((Double) value)) {
-						result = false;
-						break;
-					}
-				}
-			} catch (IllegalAccessException e) {
-				e.printStackTrace();
-			}
-		}
-		return result;
+		return MetricField.invalidFields(this) == 0;
 	}
 
 }
@@ -0,0 +1,49 @@
+package com.game013.codeanalyzer.ngram;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Maps the n-grams of a vocabulary to feature columns, so the feature vector of an encoded histogram is computed with
+ * a single merge join over its sorted entries.
+ */
+public class FeatureIndex {
+
+	private final long[] sortedKeys;
+
+	private final int[] columns;
+
+	/**
+	 * @param vocabulary n-gram keys in column order
+	 */
+	public FeatureIndex(long[] vocabulary) {
+
+		long[] flipped = new long[vocabulary.length];
+		for (int i = 0; i < vocabulary.length; ++i) {
+			flipped[i] = vocabulary[i] ^ Long.MIN_VALUE;
+		}
+		Arrays.sort(flipped);
+		this.sortedKeys = new long[vocabulary.length];
+		this.columns = new int[vocabulary.length];
+		for (int i = 0; i < flipped.length; ++i) {
+			sortedKeys[i] = flipped[i] ^ Long.MIN_VALUE;
+		}
+		for (int column = 0; column < vocabulary.length; ++column) {
+			int position = Arrays.binarySearch(flipped, vocabulary[column] ^ Long.MIN_VALUE);
+			columns[position] = column;
+		}
+	}
+
+	public int size() {
+
+		return sortedKeys.length;
+	}
+
+	public int[] features(ByteBuffer histogram) {
+
+		int[] features = new int[sortedKeys.length];
+		NgramHistogramCodec.join(histogram, sortedKeys, columns, features);
+		return features;
+	}
+
+}
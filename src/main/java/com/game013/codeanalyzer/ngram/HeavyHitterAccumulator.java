@@ -0,0 +1,116 @@
+package com.game013.codeanalyzer.ngram;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Bounded memory counterpart of {@link NgramAccumulator}. Every worker thread feeds the histograms of its submissions
+ * into its own {@link SpaceSaving} summary per order, and the summaries are merged pairwise at the end.
+ */
+@Slf4j
+public class HeavyHitterAccumulator {
+
+	private final int minN;
+
+	private final int maxN;
+
+	private final double epsilon;
+
+	private final Map<Thread, SpaceSaving[]> partials = new ConcurrentHashMap<>();
+
+	public HeavyHitterAccumulator(int minN, int maxN, double epsilon) {
+
+		this.minN = minN;
+		this.maxN = maxN;
+		this.epsilon = epsilon;
+	}
+
+	public void add(NgramCounts counts) {
+
+		Thread thread = Thread.currentThread();
+		SpaceSaving[] partial = partials.get(thread);
+		if (partial == null) {
+			partial = partials.computeIfAbsent(thread, key -> newSummaries());
+		}
+		for (int n = minN; n <= maxN; ++n) {
+			partial[n].offerAll(counts.get(n));
+		}
+	}
+
+	/**
+	 * Starts from the estimated counts of an earlier run. Their errors are not known any more, so estimates can exceed
+	 * the true counts by the errors of that run on top of the error bound. Must be called before adding any counts.
+	 */
+	public void seed(NgramCounts counts) {
+
+		add(counts);
+	}
+
+	/**
+	 * Estimated counts of every worker merged, keeping the merged summaries as a single partial so adding can go on
+	 * afterwards. Must be called while no counts are being added.
+	 */
+	public NgramCounts snapshot() {
+
+		SpaceSaving[] summaries = merge();
+		partials.put(Thread.currentThread(), summaries);
+		return toCounts(summaries);
+	}
+
+	/**
+	 * Merges the summaries of every worker, indexed by n-gram order. Must be called once no more counts are being added.
+	 */
+	public SpaceSaving[] merge() {
+
+		long start = System.nanoTime();
+		List<SpaceSaving[]> level = new ArrayList<>(partials.values());
+		int partialCount = level.size();
+		partials.clear();
+		while (level.size() > 1) {
+			List<SpaceSaving[]> current = level;
+			level = IntStream.range(0, (current.size() + 1) / 2).parallel()
+					.mapToObj(i -> 2 * i + 1 < current.size() ? merge(current.get(2 * i), current.get(2 * i + 1)) :
+							current.get(2 * i))
+					.collect(Collectors.toList());
+		}
+		SpaceSaving[] result = level.isEmpty() ? newSummaries() : level.get(0);
+		log.info("Merged [{}] partial heavy hitter summaries in [{}] ms", partialCount,
+				(System.nanoTime() - start) / 1_000_000);
+		return result;
+	}
+
+	/**
+	 * Estimated counts of the monitored n-grams of every order.
+	 */
+	public NgramCounts toCounts(SpaceSaving[] summaries) {
+
+		NgramCounts counts = new NgramCounts(minN, maxN);
+		for (int n = minN; n <= maxN; ++n) {
+			counts.set(n, summaries[n].toCounts());
+		}
+		return counts;
+	}
+
+	private SpaceSaving[] merge(SpaceSaving[] left, SpaceSaving[] right) {
+
+		SpaceSaving[] result = new SpaceSaving[maxN + 1];
+		IntStream.rangeClosed(minN, maxN).parallel().forEach(n -> result[n] = left[n].merge(right[n]));
+		return result;
+	}
+
+	private SpaceSaving[] newSummaries() {
+
+		SpaceSaving[] summaries = new SpaceSaving[maxN + 1];
+		for (int n = minN; n <= maxN; ++n) {
+			summaries[n] = new SpaceSaving(epsilon);
+		}
+		return summaries;
+	}
+
+}
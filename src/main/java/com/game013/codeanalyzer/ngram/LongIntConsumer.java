@@ -0,0 +1,8 @@
+package com.game013.codeanalyzer.ngram;
+
+@FunctionalInterface
+public interface LongIntConsumer {
+
+	void accept(long key, int value);
+
+}
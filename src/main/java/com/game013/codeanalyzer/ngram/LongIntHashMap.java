@@ -0,0 +1,254 @@
+package com.game013.codeanalyzer.ngram;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from {@code long} to {@code int} with linear probing, used to count packed n-gram keys
+ * without boxing. Zero is reserved to mark empty slots and can not be used as a key.
+ */
+public class LongIntHashMap {
+
+	private static final float LOAD_FACTOR = 0.5f;
+
+	private long[] keys;
+
+	private int[] values;
+
+	private int size;
+
+	private int mask;
+
+	public LongIntHashMap() {
+
+		this(16);
+	}
+
+	public LongIntHashMap(int expectedSize) {
+
+		int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+		allocate(capacity);
+	}
+
+	/**
+	 * Adds {@code delta} to the value of {@code key}, inserting it when absent.
+	 */
+	public void add(long key, int delta) {
+
+		if (key == 0) {
+			throw new IllegalArgumentException("Zero can not be used as a key");
+		}
+		int slot = slot(key);
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				values[slot] += delta;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = delta;
+		if (++size > keys.length * LOAD_FACTOR) {
+			rehash(keys.length << 1);
+		}
+	}
+
+	public void put(long key, int value) {
+
+		if (key == 0) {
+			throw new IllegalArgumentException("Zero can not be used as a key");
+		}
+		int slot = slot(key);
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				values[slot] = value;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		values[slot] = value;
+		if (++size > keys.length * LOAD_FACTOR) {
+			rehash(keys.length << 1);
+		}
+	}
+
+	public void remove(long key) {
+
+		int slot = slot(key);
+		while (keys[slot] != key) {
+			if (keys[slot] == 0) {
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		// Backward shift the entries that follow in the probe sequence, so no tombstones are needed
+		int hole = slot;
+		slot = (slot + 1) & mask;
+		while (keys[slot] != 0) {
+			int home = slot(keys[slot]);
+			if (((slot - home) & mask) >= ((slot - hole) & mask)) {
+				keys[hole] = keys[slot];
+				values[hole] = values[slot];
+				hole = slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[hole] = 0;
+		--size;
+	}
+
+	/**
+	 * Value of {@code key}, or zero when absent.
+	 */
+	public int get(long key) {
+
+		int slot = slot(key);
+		while (keys[slot] != 0) {
+			if (keys[slot] == key) {
+				return values[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return 0;
+	}
+
+	public void addAll(LongIntHashMap other) {
+
+		other.forEach(this::add);
+	}
+
+	public void forEach(LongIntConsumer consumer) {
+
+		for (int i = 0; i < keys.length; ++i) {
+			if (keys[i] != 0) {
+				consumer.accept(keys[i], values[i]);
+			}
+		}
+	}
+
+	public int size() {
+
+		return size;
+	}
+
+	public boolean isEmpty() {
+
+		return size == 0;
+	}
+
+	public void clear() {
+
+		Arrays.fill(keys, 0L);
+		size = 0;
+	}
+
+	/**
+	 * The {@code k} keys with the highest values, ordered by ascending value.
+	 */
+	public long[] topKeys(int k) {
+
+		int limit = Math.min(k, size);
+		long[] heapKeys = new long[limit];
+		int[] heapValues = new int[limit];
+		int heapSize = 0;
+		for (int i = 0; i < keys.length; ++i) {
+			if (keys[i] == 0) {
+				continue;
+			}
+			if (heapSize < limit) {
+				heapKeys[heapSize] = keys[i];
+				heapValues[heapSize] = values[i];
+				siftUp(heapKeys, heapValues, heapSize++);
+			} else if (limit > 0 && values[i] > heapValues[0]) {
+				heapKeys[0] = keys[i];
+				heapValues[0] = values[i];
+				siftDown(heapKeys, heapValues, 0, heapSize);
+			}
+		}
+		long[] result = new long[heapSize];
+		for (int i = 0; i < result.length; ++i) {
+			result[i] = heapKeys[0];
+			heapKeys[0] = heapKeys[--heapSize];
+			heapValues[0] = heapValues[heapSize];
+			siftDown(heapKeys, heapValues, 0, heapSize);
+		}
+		return result;
+	}
+
+	private static void siftUp(long[] heapKeys, int[] heapValues, int index) {
+
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (heapValues[parent] <= heapValues[index]) {
+				return;
+			}
+			swap(heapKeys, heapValues, parent, index);
+			index = parent;
+		}
+	}
+
+	private static void siftDown(long[] heapKeys, int[] heapValues, int index, int heapSize) {
+
+		while (true) {
+			int smallest = index;
+			int left = 2 * index + 1;
+			int right = left + 1;
+			if (left < heapSize && heapValues[left] < heapValues[smallest]) {
+				smallest = left;
+			}
+			if (right < heapSize && heapValues[right] < heapValues[smallest]) {
+				smallest = right;
+			}
+			if (smallest == index) {
+				return;
+			}
+			swap(heapKeys, heapValues, smallest, index);
+			index = smallest;
+		}
+	}
+
+	private static void swap(long[] heapKeys, int[] heapValues, int i, int j) {
+
+		long key = heapKeys[i];
+		heapKeys[i] = heapKeys[j];
+		heapKeys[j] = key;
+		int value = heapValues[i];
+		heapValues[i] = heapValues[j];
+		heapValues[j] = value;
+	}
+
+	private int slot(long key) {
+
+		key ^= key >>> 33;
+		key *= 0xff51afd7ed558ccdL;
+		key ^= key >>> 33;
+		key *= 0xc4ceb9fe1a85ec53L;
+		key ^= key >>> 33;
+		return (int) key & mask;
+	}
+
+	private void allocate(int capacity) {
+
+		keys = new long[capacity];
+		values = new int[capacity];
+		mask = capacity - 1;
+	}
+
+	private void rehash(int capacity) {
+
+		long[] oldKeys = keys;
+		int[] oldValues = values;
+		allocate(capacity);
+		for (int i = 0; i < oldKeys.length; ++i) {
+			if (oldKeys[i] != 0) {
+				int slot = slot(oldKeys[i]);
+				while (keys[slot] != 0) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package com.game013.codeanalyzer.ngram;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * Accumulates global n-gram counts without contention. Every worker thread adds to its own partial counts, and the
+ * partials are merged pairwise, level by level, once all the submissions have been added.
+ */
+@Slf4j
+public class NgramAccumulator {
+
+	private final int minN;
+
+	private final int maxN;
+
+	private final Map<Thread, NgramCounts> partials = new ConcurrentHashMap<>();
+
+	public NgramAccumulator(int minN, int maxN) {
+
+		this.minN = minN;
+		this.maxN = maxN;
+	}
+
+	public void add(NgramCounts counts) {
+
+		Thread thread = Thread.currentThread();
+		NgramCounts partial = partials.get(thread);
+		if (partial == null) {
+			partial = partials.computeIfAbsent(thread, key -> new NgramCounts(minN, maxN));
+		}
+		partial.addAll(counts);
+	}
+
+	/**
+	 * Starts from the counts of an earlier run, taking ownership of them. Must be called before adding any counts.
+	 */
+	public void seed(NgramCounts counts) {
+
+		partials.put(Thread.currentThread(), counts);
+	}
+
+	/**
+	 * Merges the partial counts of every worker and keeps them as a single partial, so adding can go on afterwards. Must
+	 * be called while no counts are being added, and the result is only valid until the next one is.
+	 */
+	public NgramCounts snapshot() {
+
+		NgramCounts counts = merge();
+		partials.put(Thread.currentThread(), counts);
+		return counts;
+	}
+
+	/**
+	 * Merges the partial counts of every worker. Must be called once no more counts are being added.
+	 */
+	public NgramCounts merge() {
+
+		long start = System.nanoTime();
+		List<NgramCounts> level = new ArrayList<>(partials.values());
+		int partialCount = level.size();
+		partials.clear();
+		while (level.size() > 1) {
+			List<NgramCounts> current = level;
+			level = IntStream.range(0, (current.size() + 1) / 2).parallel()
+					.mapToObj(i -> 2 * i + 1 < current.size() ? merge(current.get(2 * i), current.get(2 * i + 1)) :
+							current.get(2 * i))
+					.collect(Collectors.toList());
+		}
+		NgramCounts result = level.isEmpty() ? new NgramCounts(minN, maxN) : level.get(0);
+		log.info("Merged [{}] partial n-gram counts in [{}] ms", partialCount, (System.nanoTime() - start) / 1_000_000);
+		return result;
+	}
+
+	private NgramCounts merge(NgramCounts left, NgramCounts right) {
+
+		NgramCounts result = new NgramCounts(minN, maxN);
+		IntStream.rangeClosed(minN, maxN).parallel().forEach(n -> {
+			LongIntHashMap larger = left.get(n).size() >= right.get(n).size() ? left.get(n) : right.get(n);
+			LongIntHashMap smaller = larger == left.get(n) ? right.get(n) : left.get(n);
+			larger.addAll(smaller);
+			result.set(n, larger);
+		});
+		return result;
+	}
+
+}
@@ -0,0 +1,61 @@
+package com.game013.codeanalyzer.ngram;
+
+/**
+ * N-gram histograms of every order in {@code minN..maxN}.
+ */
+public class NgramCounts {
+
+	private static final String[] ORDER_NAMES = {null, "unigram", "bigram", "trigram", "fourgram", "fivegram"};
+
+	private final int minN;
+
+	private final int maxN;
+
+	private final LongIntHashMap[] counts;
+
+	public NgramCounts(int minN, int maxN) {
+
+		this.minN = minN;
+		this.maxN = maxN;
+		this.counts = new LongIntHashMap[maxN + 1];
+		for (int n = minN; n <= maxN; ++n) {
+			counts[n] = new LongIntHashMap();
+		}
+	}
+
+	/**
+	 * Name of an n-gram order as used in file names, e.g. {@code bigram} for 2 or {@code 6gram} for 6.
+	 */
+	public static String orderName(int n) {
+
+		return n < ORDER_NAMES.length ? ORDER_NAMES[n] : n + "gram";
+	}
+
+	public int getMinN() {
+
+		return minN;
+	}
+
+	public int getMaxN() {
+
+		return maxN;
+	}
+
+	public LongIntHashMap get(int n) {
+
+		return counts[n];
+	}
+
+	public void set(int n, LongIntHashMap nGrams) {
+
+		counts[n] = nGrams;
+	}
+
+	public void addAll(NgramCounts other) {
+
+		for (int n = minN; n <= maxN; ++n) {
+			counts[n].addAll(other.counts[n]);
+		}
+	}
+
+}
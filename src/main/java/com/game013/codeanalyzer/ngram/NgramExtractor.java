@@ -0,0 +1,53 @@
+package com.game013.codeanalyzer.ngram;
+
+/**
+ * Extracts the n-grams of every order in {@code minN..maxN} with a single pass over the token types. The last
+ * {@code maxN} tokens are kept packed in a rolling window, so the key of each order is just a mask over it.
+ */
+public class NgramExtractor {
+
+	private final int minN;
+
+	private final int maxN;
+
+	private final long[] masks;
+
+	public NgramExtractor(int minN, int maxN) {
+
+		if (minN < 1 || minN > maxN || maxN > NgramKey.MAX_ORDER) {
+			throw new IllegalArgumentException(String.format("Invalid n-gram range [%d, %d], orders must be between 1" +
+					" and %d", minN, maxN, NgramKey.MAX_ORDER));
+		}
+		this.minN = minN;
+		this.maxN = maxN;
+		this.masks = new long[maxN + 1];
+		for (int n = minN; n <= maxN; ++n) {
+			masks[n] = n == NgramKey.MAX_ORDER ? -1L : (1L << (n * NgramKey.BITS_PER_TOKEN)) - 1;
+		}
+	}
+
+	public int getMinN() {
+
+		return minN;
+	}
+
+	public int getMaxN() {
+
+		return maxN;
+	}
+
+	public NgramCounts extract(int[] types) {
+
+		NgramCounts counts = new NgramCounts(minN, maxN);
+		long window = 0;
+		for (int i = 0; i < types.length; ++i) {
+			window = (window << NgramKey.BITS_PER_TOKEN) | types[i];
+			int available = Math.min(maxN, i + 1);
+			for (int n = minN; n <= available; ++n) {
+				counts.get(n).add(window & masks[n], 1);
+			}
+		}
+		return counts;
+	}
+
+}
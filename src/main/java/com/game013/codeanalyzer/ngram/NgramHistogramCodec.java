@@ -0,0 +1,145 @@
+package com.game013.codeanalyzer.ngram;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Binary encoding of an n-gram histogram. The layout is a header made of the magic number, the format version, the
+ * n-gram order and the number of entries as a varint, followed by the entries sorted by packed key, each one the
+ * varint delta from the previous key and the varint count.
+ * <p>
+ * Histograms are read directly from a {@link ByteBuffer}, either entry by entry or joined against a sorted vocabulary,
+ * without materializing a map.
+ */
+public final class NgramHistogramCodec {
+
+	public static final int MAGIC = 0x4E474853;
+
+	public static final byte VERSION = 1;
+
+	private static final int HEADER_SIZE = Integer.BYTES + 2 * Byte.BYTES + 5;
+
+	private NgramHistogramCodec() {
+
+	}
+
+	/**
+	 * Upper bound of the encoded size of a histogram.
+	 */
+	public static int maxEncodedSize(LongIntHashMap histogram) {
+
+		return HEADER_SIZE + histogram.size() * (10 + 5);
+	}
+
+	public static ByteBuffer encode(int n, LongIntHashMap histogram) {
+
+		ByteBuffer buffer = ByteBuffer.allocate(maxEncodedSize(histogram));
+		encode(n, histogram, buffer);
+		buffer.flip();
+		return buffer;
+	}
+
+	public static void encode(int n, LongIntHashMap histogram, ByteBuffer out) {
+
+		long[] keys = new long[histogram.size()];
+		int[] index = {0};
+		histogram.forEach((key, count) -> keys[index[0]++] = key ^ Long.MIN_VALUE);
+		// Flipping the sign bit makes the signed sort order the unsigned order of the keys
+		Arrays.sort(keys);
+
+		out.putInt(MAGIC);
+		out.put(VERSION);
+		out.put((byte) n);
+		putVarLong(out, keys.length);
+		long previous = 0;
+		for (long flipped : keys) {
+			long key = flipped ^ Long.MIN_VALUE;
+			putVarLong(out, key - previous);
+			putVarLong(out, histogram.get(key));
+			previous = key;
+		}
+	}
+
+	/**
+	 * Order of the n-grams of an encoded histogram, read without moving the buffer position.
+	 */
+	public static int order(ByteBuffer in) {
+
+		return in.get(in.position() + Integer.BYTES + 1);
+	}
+
+	public static void forEach(ByteBuffer in, LongIntConsumer consumer) {
+
+		int entries = readHeader(in);
+		long key = 0;
+		for (int i = 0; i < entries; ++i) {
+			key += getVarLong(in);
+			consumer.accept(key, (int) getVarLong(in));
+		}
+	}
+
+	public static LongIntHashMap decode(ByteBuffer in) {
+
+		int entries = readHeader(in.duplicate());
+		LongIntHashMap histogram = new LongIntHashMap(entries);
+		forEach(in, histogram::put);
+		return histogram;
+	}
+
+	/**
+	 * Joins an encoded histogram with a vocabulary, writing the count of {@code sortedKeys[i]} in
+	 * {@code features[columns[i]]}. Keys must be sorted by unsigned value, and vocabulary keys that are missing in the
+	 * histogram leave their feature untouched.
+	 */
+	public static void join(ByteBuffer in, long[] sortedKeys, int[] columns, int[] features) {
+
+		int entries = readHeader(in);
+		long key = 0;
+		int v = 0;
+		for (int i = 0; i < entries && v < sortedKeys.length; ++i) {
+			key += getVarLong(in);
+			int count = (int) getVarLong(in);
+			while (v < sortedKeys.length && Long.compareUnsigned(sortedKeys[v], key) < 0) {
+				++v;
+			}
+			if (v < sortedKeys.length && sortedKeys[v] == key) {
+				features[columns[v++]] = count;
+			}
+		}
+	}
+
+	private static int readHeader(ByteBuffer in) {
+
+		int magic = in.getInt();
+		byte version = in.get();
+		if (magic != MAGIC || version != VERSION) {
+			throw new IllegalArgumentException(String.format("Unsupported n-gram histogram, magic [%x] version [%d]",
+					magic, version));
+		}
+		in.get();
+		return (int) getVarLong(in);
+	}
+
+	static void putVarLong(ByteBuffer out, long value) {
+
+		while ((value & ~0x7FL) != 0) {
+			out.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	static long getVarLong(ByteBuffer in) {
+
+		long value = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = in.get();
+			value |= (long) (b & 0x7F) << shift;
+			shift += 7;
+		} while (b < 0);
+		return value;
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.game013.codeanalyzer.ngram;
+
+import com.game013.cppgrammar.CPP14Lexer;
+
+/**
+ * Packs token n-grams into a single {@code long}. Every token type takes one byte and the first token of the n-gram is
+ * stored in the most significant position, so n-grams up to {@link #MAX_ORDER} tokens fit in a key. Token types are
+ * never zero, which means the order of an n-gram can be recovered from its key and a key is never zero.
+ */
+public final class NgramKey {
+
+	public static final int BITS_PER_TOKEN = 8;
+
+	public static final int MAX_ORDER = Long.SIZE / BITS_PER_TOKEN;
+
+	private static final long TOKEN_MASK = (1L << BITS_PER_TOKEN) - 1;
+
+	static {
+		if (CPP14Lexer.VOCABULARY.getMaxTokenType() > TOKEN_MASK) {
+			throw new IllegalStateException("Token types do not fit in " + BITS_PER_TOKEN + " bits");
+		}
+	}
+
+	private NgramKey() {
+
+	}
+
+	public static long pack(int[] types, int from, int n) {
+
+		long key = 0;
+		for (int i = from; i < from + n; ++i) {
+			key = (key << BITS_PER_TOKEN) | types[i];
+		}
+		return key;
+	}
+
+	public static int order(long key) {
+
+		return (Long.SIZE - Long.numberOfLeadingZeros(key) + BITS_PER_TOKEN - 1) / BITS_PER_TOKEN;
+	}
+
+	public static int tokenAt(long key, int position) {
+
+		int shift = (order(key) - position - 1) * BITS_PER_TOKEN;
+		return (int) ((key >>> shift) & TOKEN_MASK);
+	}
+
+	/**
+	 * Renders a key as the token types joined by {@code |}, the textual format used by the n-gram meanings.
+	 */
+	public static String render(long key) {
+
+		int n = order(key);
+		StringBuilder builder = new StringBuilder(n * 4);
+		for (int i = 0; i < n; ++i) {
+			if (i > 0) {
+				builder.append('|');
+			}
+			builder.append(tokenAt(key, i));
+		}
+		return builder.toString();
+	}
+
+}
@@ -0,0 +1,436 @@
+package com.game013.codeanalyzer.ngram;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Read only view of the per-submission n-gram histograms packed in a few large append-only segment files.
+ * <p>
+ * Every record in a segment is the submission id, the number of orders, the order and length of each histogram and
+ * then the histograms encoded with {@link NgramHistogramCodec}. A separate index file keeps the submission ids sorted
+ * with the segment and offset of their record. Segments are memory mapped, so looking up a histogram returns a slice
+ * of the mapped file without copying it, and scanning every record is a sequential read of each segment.
+ */
+public class NgramSegmentStore implements Closeable {
+
+	private static final int INDEX_MAGIC = 0x4E475349;
+
+	private static final int INDEX_VERSION = 1;
+
+	private static final String INDEX_FILE = "segments.idx";
+
+	private static final String SEGMENT_FILE = "segment-%05d.dat";
+
+	private static final int SEGMENT_BITS = 16;
+
+	private static final long OFFSET_MASK = (1L << (Long.SIZE - SEGMENT_BITS)) - 1;
+
+	private final long[] submissionIds;
+
+	private final long[] locations;
+
+	private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+	private NgramSegmentStore(long[] submissionIds, long[] locations) {
+
+		this.submissionIds = submissionIds;
+		this.locations = locations;
+	}
+
+	public static NgramSegmentStore open(Path directory) {
+
+		try {
+			IndexBuilder index = IndexBuilder.load(directory);
+			NgramSegmentStore store = new NgramSegmentStore(index.submissionIds, index.locations);
+			for (int segment = 0; Files.exists(segmentFile(directory, segment)); ++segment) {
+				try (FileChannel channel = FileChannel.open(segmentFile(directory, segment), StandardOpenOption.READ)) {
+					store.segments.add(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+				}
+			}
+			return store;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public int size() {
+
+		return submissionIds.length;
+	}
+
+	public boolean contains(long submissionId) {
+
+		return Arrays.binarySearch(submissionIds, submissionId) >= 0;
+	}
+
+	/**
+	 * Encoded histogram of order {@code n} of a submission, or {@code null} when it is not in the store.
+	 */
+	public ByteBuffer find(long submissionId, int n) {
+
+		int position = Arrays.binarySearch(submissionIds, submissionId);
+		if (position < 0) {
+			return null;
+		}
+		long location = locations[position];
+		ByteBuffer segment = segments.get(segment(location)).duplicate();
+		segment.position((int) offset(location));
+		return histogram(segment, n);
+	}
+
+	/**
+	 * Visits every record of every segment in file order. A submission written more than once is visited once per
+	 * record.
+	 */
+	public void scan(RecordConsumer consumer) {
+
+		for (MappedByteBuffer mapped : segments) {
+			ByteBuffer segment = mapped.duplicate();
+			while (segment.hasRemaining()) {
+				int start = segment.position();
+				long submissionId = segment.getLong();
+				int orders = segment.get();
+				int length = 0;
+				for (int i = 0; i < orders; ++i) {
+					segment.get();
+					length += segment.getInt();
+				}
+				segment.position(start);
+				ByteBuffer record = segment.slice();
+				record.limit(Long.BYTES + 1 + orders * (1 + Integer.BYTES) + length);
+				consumer.accept(submissionId, new Record(record));
+				segment.position(start + record.limit());
+			}
+		}
+	}
+
+	@Override
+	public void close() {
+
+		segments.clear();
+	}
+
+	static ByteBuffer encodeRecord(long submissionId, NgramCounts counts) {
+
+		int orders = counts.getMaxN() - counts.getMinN() + 1;
+		ByteBuffer[] histograms = new ByteBuffer[orders];
+		int length = 0;
+		for (int i = 0; i < orders; ++i) {
+			histograms[i] = NgramHistogramCodec.encode(counts.getMinN() + i, counts.get(counts.getMinN() + i));
+			length += histograms[i].remaining();
+		}
+		ByteBuffer record = ByteBuffer.allocate(Long.BYTES + 1 + orders * (1 + Integer.BYTES) + length);
+		record.putLong(submissionId);
+		record.put((byte) orders);
+		for (int i = 0; i < orders; ++i) {
+			record.put((byte) (counts.getMinN() + i));
+			record.putInt(histograms[i].remaining());
+		}
+		for (ByteBuffer histogram : histograms) {
+			record.put(histogram);
+		}
+		record.flip();
+		return record;
+	}
+
+	private static ByteBuffer histogram(ByteBuffer record, int n) {
+
+		record.getLong();
+		int orders = record.get();
+		int offset = record.position() + orders * (1 + Integer.BYTES);
+		for (int i = 0; i < orders; ++i) {
+			int order = record.get();
+			int length = record.getInt();
+			if (order == n) {
+				record.position(offset);
+				ByteBuffer histogram = record.slice();
+				histogram.limit(length);
+				return histogram;
+			}
+			offset += length;
+		}
+		return null;
+	}
+
+	/**
+	 * Location of a record, which orders records by segment and then by offset.
+	 */
+	static long location(int segment, long offset) {
+
+		return ((long) segment << (Long.SIZE - SEGMENT_BITS)) | offset;
+	}
+
+	static int segment(long location) {
+
+		return (int) (location >>> (Long.SIZE - SEGMENT_BITS));
+	}
+
+	static long offset(long location) {
+
+		return location & OFFSET_MASK;
+	}
+
+	static Path segmentFile(Path directory, int segment) {
+
+		return directory.resolve(String.format(SEGMENT_FILE, segment));
+	}
+
+	/**
+	 * Deletes the index and every segment of the store in {@code directory}.
+	 */
+	static void delete(Path directory) throws IOException {
+
+		Files.deleteIfExists(directory.resolve(INDEX_FILE));
+		for (int segment = 0; Files.deleteIfExists(segmentFile(directory, segment)); ++segment) {
+			// Segments are numbered consecutively, the first missing one is the end of the store
+		}
+	}
+
+	static int nextSegment(Path directory) {
+
+		int segment = 0;
+		while (Files.exists(segmentFile(directory, segment))) {
+			++segment;
+		}
+		return segment;
+	}
+
+	@FunctionalInterface
+	public interface RecordConsumer {
+
+		void accept(long submissionId, Record record);
+
+	}
+
+	/**
+	 * The histograms of a single submission.
+	 */
+	public static class Record {
+
+		private final ByteBuffer buffer;
+
+		private Record(ByteBuffer buffer) {
+
+			this.buffer = buffer;
+		}
+
+		/**
+		 * Encodes histograms as a record that does not belong to any segment yet.
+		 */
+		public static Record of(NgramCounts counts) {
+
+			return new Record(encodeRecord(0, counts));
+		}
+
+		/**
+		 * Record previously encoded by {@link #of(NgramCounts)} and read back from {@link #buffer()}.
+		 */
+		public static Record wrap(ByteBuffer buffer) {
+
+			return new Record(buffer);
+		}
+
+		public ByteBuffer buffer() {
+
+			return buffer.duplicate();
+		}
+
+		/**
+		 * Decodes every histogram of the record.
+		 */
+		public NgramCounts counts() {
+
+			ByteBuffer record = buffer.duplicate();
+			record.getLong();
+			int orders = record.get();
+			int minN = record.get(record.position());
+			int maxN = record.get(record.position() + (orders - 1) * (1 + Integer.BYTES));
+			NgramCounts counts = new NgramCounts(minN, maxN);
+			for (int n = minN; n <= maxN; ++n) {
+				counts.set(n, NgramHistogramCodec.decode(histogram(n)));
+			}
+			return counts;
+		}
+
+		/**
+		 * Encoded histogram of order {@code n}, or {@code null} when the order was not extracted.
+		 */
+		public ByteBuffer histogram(int n) {
+
+			return NgramSegmentStore.histogram(buffer.duplicate(), n);
+		}
+
+	}
+
+	/**
+	 * Submission id to record location pairs, kept in arrival order until they are sorted into the index file.
+	 */
+	static class IndexBuilder {
+
+		private long[] submissionIds;
+
+		private long[] locations;
+
+		private int size;
+
+		private IndexBuilder(long[] submissionIds, long[] locations) {
+
+			this.submissionIds = submissionIds;
+			this.locations = locations;
+			this.size = submissionIds.length;
+		}
+
+		static IndexBuilder load(Path directory) throws IOException {
+
+			Path file = directory.resolve(INDEX_FILE);
+			if (!Files.exists(file)) {
+				return new IndexBuilder(new long[0], new long[0]);
+			}
+			try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				if (buffer.getInt() != INDEX_MAGIC || buffer.getInt() != INDEX_VERSION) {
+					throw new IOException("Unsupported n-gram segment index " + file);
+				}
+				int count = buffer.getInt();
+				long[] submissionIds = new long[count];
+				long[] locations = new long[count];
+				buffer.asLongBuffer().get(submissionIds);
+				buffer.position(buffer.position() + count * Long.BYTES);
+				buffer.asLongBuffer().get(locations);
+				return new IndexBuilder(submissionIds, locations);
+			}
+		}
+
+		void add(long submissionId, int segment, long offset) {
+
+			if (size == submissionIds.length) {
+				int capacity = Math.max(1024, size * 2);
+				submissionIds = Arrays.copyOf(submissionIds, capacity);
+				locations = Arrays.copyOf(locations, capacity);
+			}
+			submissionIds[size] = submissionId;
+			locations[size] = location(segment, offset);
+			++size;
+		}
+
+		/**
+		 * Drops the entries of the records at or after {@code end}.
+		 */
+		void truncate(long end) {
+
+			int kept = 0;
+			for (int i = 0; i < size; ++i) {
+				if (locations[i] < end) {
+					submissionIds[kept] = submissionIds[i];
+					locations[kept] = locations[i];
+					++kept;
+				}
+			}
+			size = kept;
+		}
+
+		int size() {
+
+			return size;
+		}
+
+		/**
+		 * Sorts the entries by submission id, keeping only the last record written for each one, and atomically
+		 * replaces the index file.
+		 */
+		void write(Path directory) throws IOException {
+
+			sort(0, size - 1);
+			int unique = 0;
+			for (int i = 0; i < size; ++i) {
+				if (unique > 0 && submissionIds[unique - 1] == submissionIds[i]) {
+					--unique;
+				}
+				submissionIds[unique] = submissionIds[i];
+				locations[unique] = locations[i];
+				++unique;
+			}
+			size = unique;
+
+			ByteBuffer buffer = ByteBuffer.allocate(3 * Integer.BYTES + 2 * size * Long.BYTES);
+			buffer.putInt(INDEX_MAGIC).putInt(INDEX_VERSION).putInt(size);
+			buffer.asLongBuffer().put(submissionIds, 0, size);
+			buffer.position(buffer.position() + size * Long.BYTES);
+			buffer.asLongBuffer().put(locations, 0, size);
+			buffer.position(0);
+
+			Path temporary = directory.resolve(INDEX_FILE + ".tmp");
+			try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+					StandardOpenOption.TRUNCATE_EXISTING)) {
+				while (buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+				channel.force(true);
+			}
+			Files.move(temporary, directory.resolve(INDEX_FILE), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+		}
+
+		/**
+		 * Quicksort of the parallel arrays by submission id and then by location, so later records of the same
+		 * submission come last.
+		 */
+		private void sort(int low, int high) {
+
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				long pivotId = submissionIds[middle];
+				long pivotLocation = locations[middle];
+				int i = low;
+				int j = high;
+				while (i <= j) {
+					while (compare(i, pivotId, pivotLocation) < 0) {
+						++i;
+					}
+					while (compare(j, pivotId, pivotLocation) > 0) {
+						--j;
+					}
+					if (i <= j) {
+						swap(i++, j--);
+					}
+				}
+				if (j - low < high - i) {
+					sort(low, j);
+					low = i;
+				} else {
+					sort(i, high);
+					high = j;
+				}
+			}
+		}
+
+		private int compare(int i, long id, long location) {
+
+			int result = Long.compare(submissionIds[i], id);
+			return result != 0 ? result : Long.compare(locations[i], location);
+		}
+
+		private void swap(int i, int j) {
+
+			long id = submissionIds[i];
+			submissionIds[i] = submissionIds[j];
+			submissionIds[j] = id;
+			long location = locations[i];
+			locations[i] = locations[j];
+			locations[j] = location;
+		}
+
+	}
+
+}
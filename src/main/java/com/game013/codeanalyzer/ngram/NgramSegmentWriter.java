@@ -0,0 +1,163 @@
+package com.game013.codeanalyzer.ngram;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Appends the n-gram histograms of submissions to the segment files of a {@link NgramSegmentStore}. Records are
+ * written in arrival order, and the sorted index is rewritten when the writer is flushed or closed. When appending, the
+ * records of previous runs found in the directory are kept and new records go to new segments.
+ */
+@Slf4j
+public class NgramSegmentWriter implements Closeable {
+
+	private final Path directory;
+
+	private final long maxSegmentSize;
+
+	private final NgramSegmentStore.IndexBuilder index;
+
+	private int segment;
+
+	private FileChannel channel;
+
+	private long position;
+
+	public NgramSegmentWriter(Path directory, long maxSegmentSize, boolean append) {
+
+		this(directory, maxSegmentSize, append, -1L);
+	}
+
+	/**
+	 * Reopens the store of an interrupted run at a location returned by {@link #checkpoint()}, dropping the records
+	 * written after it so they can be appended again.
+	 */
+	public static NgramSegmentWriter resume(Path directory, long maxSegmentSize, long checkpoint) {
+
+		return new NgramSegmentWriter(directory, maxSegmentSize, true, checkpoint);
+	}
+
+	private NgramSegmentWriter(Path directory, long maxSegmentSize, boolean append, long checkpoint) {
+
+		if (maxSegmentSize > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Segments larger than 2GB can not be memory mapped");
+		}
+		this.directory = directory;
+		this.maxSegmentSize = maxSegmentSize;
+		try {
+			Files.createDirectories(directory);
+			if (!append) {
+				NgramSegmentStore.delete(directory);
+			}
+			this.index = NgramSegmentStore.IndexBuilder.load(directory);
+			if (checkpoint >= 0) {
+				reopenSegment(checkpoint);
+			} else {
+				this.segment = NgramSegmentStore.nextSegment(directory);
+				openSegment();
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	public void append(long submissionId, NgramCounts counts) {
+
+		write(submissionId, NgramSegmentStore.encodeRecord(submissionId, counts));
+	}
+
+	/**
+	 * Appends an already encoded record, as the record of {@code submissionId}.
+	 */
+	public void append(long submissionId, NgramSegmentStore.Record record) {
+
+		ByteBuffer buffer = record.buffer();
+		ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+		copy.put(buffer).putLong(0, submissionId).flip();
+		write(submissionId, copy);
+	}
+
+	private void write(long submissionId, ByteBuffer record) {
+
+		try {
+			synchronized (this) {
+				if (position > 0 && position + record.remaining() > maxSegmentSize) {
+					channel.close();
+					++segment;
+					openSegment();
+				}
+				long offset = position;
+				while (record.hasRemaining()) {
+					position += channel.write(record);
+				}
+				index.add(submissionId, segment, offset);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Forces the written records to disk and rewrites the index, so a store opened afterwards sees every record.
+	 */
+	public synchronized void flush() {
+
+		try {
+			channel.force(false);
+			index.write(directory);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Flushes the store and returns the location where the next record goes, from which it can be resumed.
+	 */
+	public synchronized long checkpoint() {
+
+		flush();
+		return NgramSegmentStore.location(segment, position);
+	}
+
+	@Override
+	public synchronized void close() {
+
+		flush();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		log.info("N-gram segment store closed with [{}] submissions in [{}]", index.size(), directory);
+	}
+
+	private void reopenSegment(long checkpoint) throws IOException {
+
+		segment = NgramSegmentStore.segment(checkpoint);
+		position = NgramSegmentStore.offset(checkpoint);
+		for (int later = segment + 1; Files.deleteIfExists(NgramSegmentStore.segmentFile(directory, later)); ++later) {
+			// Segments started after the checkpoint only hold records that are appended again
+		}
+		index.truncate(checkpoint);
+		channel = FileChannel.open(NgramSegmentStore.segmentFile(directory, segment), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE);
+		channel.truncate(position);
+		channel.position(position);
+	}
+
+	private void openSegment() throws IOException {
+
+		channel = FileChannel.open(NgramSegmentStore.segmentFile(directory, segment), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+		position = 0;
+	}
+
+}
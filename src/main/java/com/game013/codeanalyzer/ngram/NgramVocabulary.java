@@ -0,0 +1,121 @@
+package com.game013.codeanalyzer.ngram;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The n-grams of an order selected as features: the most frequent ones of the global counts, in column order, with
+ * their global frequencies. It is saved next to the global counts so extracting features only reads a few kilobytes.
+ * <p>
+ * The layout is a header made of the magic number, the format version, the n-gram order, the number of n-grams that
+ * were requested and the number that were selected, followed by the packed keys and then their frequencies.
+ */
+public class NgramVocabulary {
+
+	private static final int MAGIC = 0x4E475656;
+
+	private static final byte VERSION = 1;
+
+	private final int n;
+
+	private final int requested;
+
+	private final long[] keys;
+
+	private final int[] frequencies;
+
+	private NgramVocabulary(int n, int requested, long[] keys, int[] frequencies) {
+
+		this.n = n;
+		this.requested = requested;
+		this.keys = keys;
+		this.frequencies = frequencies;
+	}
+
+	/**
+	 * Selects the {@code k} most frequent n-grams of the global counts, the most frequent last.
+	 */
+	public static NgramVocabulary select(int n, LongIntHashMap globalCounts, int k) {
+
+		long[] keys = globalCounts.topKeys(k);
+		int[] frequencies = new int[keys.length];
+		for (int i = 0; i < keys.length; ++i) {
+			frequencies[i] = globalCounts.get(keys[i]);
+		}
+		return new NgramVocabulary(n, k, keys, frequencies);
+	}
+
+	public static NgramVocabulary read(Path file) throws IOException {
+
+		// Vocabularies are small enough to be read at once
+		ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+		if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+			throw new IOException("Unsupported n-gram vocabulary " + file);
+		}
+		int n = buffer.get();
+		int requested = buffer.getInt();
+		long[] keys = new long[buffer.getInt()];
+		int[] frequencies = new int[keys.length];
+		buffer.asLongBuffer().get(keys);
+		buffer.position(buffer.position() + keys.length * Long.BYTES);
+		buffer.asIntBuffer().get(frequencies);
+		return new NgramVocabulary(n, requested, keys, frequencies);
+	}
+
+	public void write(Path file) throws IOException {
+
+		ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES + 2 * Byte.BYTES + 2 * Integer.BYTES +
+				keys.length * (Long.BYTES + Integer.BYTES));
+		buffer.putInt(MAGIC).put(VERSION).put((byte) n).putInt(requested).putInt(keys.length);
+		buffer.asLongBuffer().put(keys);
+		buffer.position(buffer.position() + keys.length * Long.BYTES);
+		buffer.asIntBuffer().put(frequencies);
+		buffer.position(0);
+
+		Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			while (buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+		}
+		Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public int getOrder() {
+
+		return n;
+	}
+
+	/**
+	 * Number of n-grams that were requested, which is more than the selected ones when the corpus has fewer.
+	 */
+	public int getRequested() {
+
+		return requested;
+	}
+
+	/**
+	 * Packed keys of the n-grams, in column order.
+	 */
+	public long[] getKeys() {
+
+		return keys;
+	}
+
+	public int[] getFrequencies() {
+
+		return frequencies;
+	}
+
+	public FeatureIndex index() {
+
+		return new FeatureIndex(keys);
+	}
+
+}
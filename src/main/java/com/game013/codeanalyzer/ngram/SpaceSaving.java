@@ -0,0 +1,209 @@
+package com.game013.codeanalyzer.ngram;
+
+/**
+ * Space-Saving heavy hitters summary over packed n-gram keys. It monitors at most {@code ceil(1 / epsilon)} keys, and
+ * the count estimated for any key exceeds its real count by at most {@code epsilon * N}, where N is the total weight
+ * offered. Counters are kept in a min-heap so the least frequent monitored key is replaced in logarithmic time.
+ */
+public class SpaceSaving {
+
+	private final int capacity;
+
+	private final long[] keys;
+
+	private final int[] counts;
+
+	private final int[] errors;
+
+	/**
+	 * Heap position plus one of every monitored key.
+	 */
+	private final LongIntHashMap positions;
+
+	private int size;
+
+	private long totalWeight;
+
+	public SpaceSaving(double epsilon) {
+
+		this((int) Math.ceil(1.0 / epsilon));
+	}
+
+	private SpaceSaving(int capacity) {
+
+		this.capacity = capacity;
+		this.keys = new long[capacity];
+		this.counts = new int[capacity];
+		this.errors = new int[capacity];
+		this.positions = new LongIntHashMap(capacity);
+	}
+
+	public void offer(long key, int weight) {
+
+		totalWeight += weight;
+		int position = positions.get(key) - 1;
+		if (position >= 0) {
+			counts[position] += weight;
+			siftDown(position);
+		} else if (size < capacity) {
+			keys[size] = key;
+			counts[size] = weight;
+			errors[size] = 0;
+			positions.put(key, size + 1);
+			siftUp(size++);
+		} else {
+			positions.remove(keys[0]);
+			keys[0] = key;
+			errors[0] = counts[0];
+			counts[0] += weight;
+			positions.put(key, 1);
+			siftDown(0);
+		}
+	}
+
+	public void offerAll(LongIntHashMap nGrams) {
+
+		nGrams.forEach(this::offer);
+	}
+
+	/**
+	 * Merges two summaries of the same capacity. A key missing from a full summary may have been evicted from it, so
+	 * it is charged the minimum counter of that summary, both in its count and in its error, which keeps every estimate
+	 * an upper bound of the real count. The largest merged counters are kept.
+	 */
+	public SpaceSaving merge(SpaceSaving other) {
+
+		LongIntHashMap mergedCounts = new LongIntHashMap(size + other.size);
+		LongIntHashMap mergedErrors = new LongIntHashMap(size + other.size);
+		for (SpaceSaving summary : new SpaceSaving[]{this, other}) {
+			SpaceSaving complement = summary == this ? other : this;
+			int complementMin = complement.minCount();
+			for (int i = 0; i < summary.size; ++i) {
+				long key = summary.keys[i];
+				if (summary == other && positions.get(key) > 0) {
+					continue;
+				}
+				mergedCounts.put(key, summary.counts[i] + complement.estimateOrMin(key, complementMin));
+				mergedErrors.put(key, summary.errors[i] + complement.errorOrMin(key, complementMin));
+			}
+		}
+		SpaceSaving result = new SpaceSaving(capacity);
+		for (long key : mergedCounts.topKeys(capacity)) {
+			result.keys[result.size] = key;
+			result.counts[result.size] = mergedCounts.get(key);
+			result.errors[result.size] = mergedErrors.get(key);
+			result.positions.put(key, result.size + 1);
+			++result.size;
+		}
+		result.totalWeight = totalWeight + other.totalWeight;
+		return result;
+	}
+
+	/**
+	 * Estimated count of {@code key}, never lower than its real count, or zero when it is not monitored.
+	 */
+	public int estimate(long key) {
+
+		int position = positions.get(key) - 1;
+		return position >= 0 ? counts[position] : 0;
+	}
+
+	/**
+	 * Maximum overestimation of the count of {@code key}.
+	 */
+	public int error(long key) {
+
+		int position = positions.get(key) - 1;
+		return position >= 0 ? errors[position] : 0;
+	}
+
+	public long getTotalWeight() {
+
+		return totalWeight;
+	}
+
+	/**
+	 * Upper bound of the overestimation of any count, i.e. {@code epsilon * N}.
+	 */
+	public long getErrorBound() {
+
+		return (long) Math.ceil((double) totalWeight / capacity);
+	}
+
+	/**
+	 * Estimated counts of all the monitored keys.
+	 */
+	public LongIntHashMap toCounts() {
+
+		LongIntHashMap result = new LongIntHashMap(size);
+		for (int i = 0; i < size; ++i) {
+			result.put(keys[i], counts[i]);
+		}
+		return result;
+	}
+
+	private int minCount() {
+
+		return size == capacity ? counts[0] : 0;
+	}
+
+	private int estimateOrMin(long key, int min) {
+
+		int position = positions.get(key) - 1;
+		return position >= 0 ? counts[position] : min;
+	}
+
+	private int errorOrMin(long key, int min) {
+
+		int position = positions.get(key) - 1;
+		return position >= 0 ? errors[position] : min;
+	}
+
+	private void siftUp(int index) {
+
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (counts[parent] <= counts[index]) {
+				return;
+			}
+			swap(parent, index);
+			index = parent;
+		}
+	}
+
+	private void siftDown(int index) {
+
+		while (true) {
+			int smallest = index;
+			int left = 2 * index + 1;
+			int right = left + 1;
+			if (left < size && counts[left] < counts[smallest]) {
+				smallest = left;
+			}
+			if (right < size && counts[right] < counts[smallest]) {
+				smallest = right;
+			}
+			if (smallest == index) {
+				return;
+			}
+			swap(smallest, index);
+			index = smallest;
+		}
+	}
+
+	private void swap(int i, int j) {
+
+		long key = keys[i];
+		keys[i] = keys[j];
+		keys[j] = key;
+		int count = counts[i];
+		counts[i] = counts[j];
+		counts[j] = count;
+		int error = errors[i];
+		errors[i] = errors[j];
+		errors[j] = error;
+		positions.put(keys[i], i + 1);
+		positions.put(keys[j], j + 1);
+	}
+
+}
@@ -0,0 +1,113 @@
+package com.game013.codeanalyzer.ngram;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * N-gram feature vector of a submission keeping only its non-zero features, as parallel arrays of ascending column
+ * indexes and counts.
+ * <p>
+ * The binary layout is the dimension and the number of non-zero features as varints, followed by every feature as the
+ * varint delta from the previous column and the varint count.
+ */
+public final class SparseFeatureVector {
+
+	private final int dimension;
+
+	private final int[] indexes;
+
+	private final int[] values;
+
+	private SparseFeatureVector(int dimension, int[] indexes, int[] values) {
+
+		this.dimension = dimension;
+		this.indexes = indexes;
+		this.values = values;
+	}
+
+	public static SparseFeatureVector of(int[] dense) {
+
+		int size = 0;
+		for (int value : dense) {
+			if (value != 0) {
+				++size;
+			}
+		}
+		int[] indexes = new int[size];
+		int[] values = new int[size];
+		int position = 0;
+		for (int i = 0; i < dense.length; ++i) {
+			if (dense[i] != 0) {
+				indexes[position] = i;
+				values[position++] = dense[i];
+			}
+		}
+		return new SparseFeatureVector(dense.length, indexes, values);
+	}
+
+	public static SparseFeatureVector decode(byte[] encoded) {
+
+		ByteBuffer in = ByteBuffer.wrap(encoded);
+		int dimension = (int) NgramHistogramCodec.getVarLong(in);
+		int size = (int) NgramHistogramCodec.getVarLong(in);
+		int[] indexes = new int[size];
+		int[] values = new int[size];
+		int index = 0;
+		for (int i = 0; i < size; ++i) {
+			index += (int) NgramHistogramCodec.getVarLong(in);
+			indexes[i] = index;
+			values[i] = (int) NgramHistogramCodec.getVarLong(in);
+		}
+		return new SparseFeatureVector(dimension, indexes, values);
+	}
+
+	public byte[] encode() {
+
+		ByteBuffer out = ByteBuffer.allocate(10 + indexes.length * 10);
+		NgramHistogramCodec.putVarLong(out, dimension);
+		NgramHistogramCodec.putVarLong(out, indexes.length);
+		int previous = 0;
+		for (int i = 0; i < indexes.length; ++i) {
+			NgramHistogramCodec.putVarLong(out, indexes[i] - previous);
+			NgramHistogramCodec.putVarLong(out, values[i] & 0xFFFFFFFFL);
+			previous = indexes[i];
+		}
+		return Arrays.copyOf(out.array(), out.position());
+	}
+
+	/**
+	 * Number of columns of the vector, zeros included.
+	 */
+	public int getDimension() {
+
+		return dimension;
+	}
+
+	/**
+	 * Number of non-zero features.
+	 */
+	public int size() {
+
+		return indexes.length;
+	}
+
+	public int[] getIndexes() {
+
+		return indexes;
+	}
+
+	public int[] getValues() {
+
+		return values;
+	}
+
+	public int[] toDense() {
+
+		int[] dense = new int[dimension];
+		for (int i = 0; i < indexes.length; ++i) {
+			dense[indexes[i]] = values[i];
+		}
+		return dense;
+	}
+
+}
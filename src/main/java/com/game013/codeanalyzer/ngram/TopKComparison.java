@@ -0,0 +1,52 @@
+package com.game013.codeanalyzer.ngram;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Arrays;
+
+/**
+ * Reports where the top-K n-grams of the approximate heavy hitters summary differ from the exact ones.
+ */
+@Slf4j
+public final class TopKComparison {
+
+	private TopKComparison() {
+
+	}
+
+	public static void report(String orderName, int k, LongIntHashMap exact, SpaceSaving approximate) {
+
+		long[] exactTop = exact.topKeys(k);
+		long[] approximateTop = approximate.toCounts().topKeys(k);
+		long[] sortedExact = exactTop.clone();
+		long[] sortedApproximate = approximateTop.clone();
+		Arrays.sort(sortedExact);
+		Arrays.sort(sortedApproximate);
+
+		int shared = 0;
+		long maxError = 0;
+		for (long key : approximateTop) {
+			if (Arrays.binarySearch(sortedExact, key) >= 0) {
+				++shared;
+				maxError = Math.max(maxError, approximate.estimate(key) - exact.get(key));
+			}
+		}
+		log.info("Heavy hitters [{}]: [{}] of the top [{}] shared, max observed error [{}], error bound [{}] over [{}] " +
+						"n-grams", orderName, shared, exactTop.length, maxError, approximate.getErrorBound(),
+				approximate.getTotalWeight());
+
+		for (long key : exactTop) {
+			if (Arrays.binarySearch(sortedApproximate, key) < 0) {
+				log.info("Heavy hitters [{}]: only exact [{}] count [{}] estimate [{}]", orderName, NgramKey.render(key),
+						exact.get(key), approximate.estimate(key));
+			}
+		}
+		for (long key : approximateTop) {
+			if (Arrays.binarySearch(sortedExact, key) < 0) {
+				log.info("Heavy hitters [{}]: only approximate [{}] estimate [{}] error [{}] count [{}]", orderName,
+						NgramKey.render(key), approximate.estimate(key), approximate.error(key), exact.get(key));
+			}
+		}
+	}
+
+}
@@ -0,0 +1,33 @@
+package com.game013.codeanalyzer.pipeline;
+
+import com.game013.cppgrammar.CPP14Lexer;
+
+/**
+ * Shannon entropy of the token type distribution.
+ */
+public class EntropyStage implements TokenStage<Double> {
+
+	@Override
+	public Double apply(TokenBuffer tokens) {
+
+		int[] tokenCount = new int[CPP14Lexer.VOCABULARY.getMaxTokenType() + 1];
+		for (int type : tokens.getTypes()) {
+			++tokenCount[type];
+		}
+
+		double entropy = 0;
+		double totalCount = tokens.size();
+		for (int count : tokenCount) {
+			if (count > 0) {
+				double p = count / totalCount;
+				entropy -= p * log2(p);
+			}
+		}
+		return entropy;
+	}
+
+	private double log2(double a) {
+		return Math.log(a) / Math.log(2);
+	}
+
+}
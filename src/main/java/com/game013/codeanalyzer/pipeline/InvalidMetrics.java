@@ -0,0 +1,75 @@
+package com.game013.codeanalyzer.pipeline;
+
+import com.game013.codeanalyzer.constant.MetricFailureCause;
+import com.game013.codeanalyzer.constant.MetricField;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counts the submissions invalidated by every metric field and every failure cause, to be reported at the end of a
+ * run.
+ */
+@Slf4j
+public class InvalidMetrics {
+
+	private static final MetricField[] FIELDS = MetricField.values();
+
+	private static final MetricFailureCause[] CAUSES = MetricFailureCause.values();
+
+	private final AtomicLongArray fieldCounts = new AtomicLongArray(FIELDS.length);
+
+	/**
+	 * Submissions by cause, with the ones with fields no cause explains last.
+	 */
+	private final AtomicLongArray causeCounts = new AtomicLongArray(CAUSES.length + 1);
+
+	/**
+	 * Records the bitmask of invalid fields of a metric, which is 0 when it is valid.
+	 */
+	public void record(int invalidFields) {
+
+		if (invalidFields == 0) {
+			return;
+		}
+		for (MetricField field : FIELDS) {
+			if (field.in(invalidFields)) {
+				fieldCounts.incrementAndGet(field.ordinal());
+			}
+		}
+		for (MetricFailureCause cause : CAUSES) {
+			if (cause.explains(invalidFields)) {
+				causeCounts.incrementAndGet(cause.ordinal());
+			}
+		}
+		if (MetricFailureCause.unexplained(invalidFields) != 0) {
+			causeCounts.incrementAndGet(CAUSES.length);
+		}
+	}
+
+	/**
+	 * Logs the invalid submissions by field and by cause, and starts over.
+	 */
+	public void logReport() {
+
+		StringBuilder report = new StringBuilder();
+		for (MetricFailureCause cause : CAUSES) {
+			append(report, cause.name(), causeCounts.getAndSet(cause.ordinal(), 0));
+		}
+		append(report, "UNEXPLAINED", causeCounts.getAndSet(CAUSES.length, 0));
+		for (MetricField field : FIELDS) {
+			append(report, field.name(), fieldCounts.getAndSet(field.ordinal(), 0));
+		}
+		if (report.length() > 0) {
+			log.info("Invalid submissions by cause and by field:{}", report);
+		}
+	}
+
+	private void append(StringBuilder report, String name, long count) {
+
+		if (count > 0) {
+			report.append(String.format("%n\t%s: %d", name, count));
+		}
+	}
+
+}
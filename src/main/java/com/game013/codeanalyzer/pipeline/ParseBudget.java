@@ -0,0 +1,109 @@
+package com.game013.codeanalyzer.pipeline;
+
+import com.game013.codeanalyzer.exception.ParseBudgetExceededError;
+import org.antlr.v4.runtime.ParserRuleContext;
+import org.antlr.v4.runtime.tree.ErrorNode;
+import org.antlr.v4.runtime.tree.ParseTreeListener;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.antlr.v4.runtime.tree.RuleNode;
+import org.antlr.v4.runtime.tree.TerminalNode;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wall time and token budget of a single submission. The budget is checked cooperatively every few rules, both while
+ * parsing and while walking the tree, so a pathological source fails with a {@link ParseBudgetExceededError} instead
+ * of holding a worker for minutes.
+ */
+public class ParseBudget {
+
+	private static final int CHECK_INTERVAL = 256;
+
+	private final long timeLimitMs;
+
+	private final long deadline;
+
+	private int ruleCount;
+
+	private ParseBudget(long timeLimitMs) {
+
+		this.timeLimitMs = timeLimitMs;
+		this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeLimitMs);
+	}
+
+	/**
+	 * Starts the budget of the given tokens. A limit of 0 disables it.
+	 *
+	 * @throws ParseBudgetExceededError when there are more tokens than allowed
+	 */
+	public static ParseBudget start(TokenBuffer tokens, long timeLimitMs, int maxTokens) {
+
+		if (maxTokens > 0 && tokens.size() > maxTokens) {
+			throw new ParseBudgetExceededError(String.format("%d tokens exceed the budget of %d tokens",
+					tokens.size(), maxTokens));
+		}
+		return new ParseBudget(timeLimitMs);
+	}
+
+	public static ParseBudget unlimited() {
+
+		return new ParseBudget(0);
+	}
+
+	/**
+	 * @throws ParseBudgetExceededError when the time is over
+	 */
+	public void check() {
+
+		if (timeLimitMs > 0 && ++ruleCount % CHECK_INTERVAL == 0 && System.nanoTime() - deadline > 0) {
+			throw new ParseBudgetExceededError(String.format("Parsing took more than %d ms", timeLimitMs));
+		}
+	}
+
+	/**
+	 * Listener checking the budget on every rule entered by a parser.
+	 */
+	public ParseTreeListener parseListener() {
+
+		return new ParseTreeListener() {
+
+			@Override
+			public void visitTerminal(TerminalNode node) {
+
+			}
+
+			@Override
+			public void visitErrorNode(ErrorNode node) {
+
+			}
+
+			@Override
+			public void enterEveryRule(ParserRuleContext ctx) {
+
+				check();
+			}
+
+			@Override
+			public void exitEveryRule(ParserRuleContext ctx) {
+
+			}
+		};
+	}
+
+	/**
+	 * Walker checking the budget on every rule it enters.
+	 */
+	public ParseTreeWalker walker() {
+
+		return new ParseTreeWalker() {
+
+			@Override
+			protected void enterRule(ParseTreeListener listener, RuleNode r) {
+
+				check();
+				super.enterRule(listener, r);
+			}
+		};
+	}
+
+}
@@ -0,0 +1,80 @@
+package com.game013.codeanalyzer.pipeline;
+
+import com.game013.codeanalyzer.listener.ParsingErrorListener;
+import com.game013.cppgrammar.CPP14Parser;
+import lombok.extern.slf4j.Slf4j;
+import org.antlr.v4.runtime.BailErrorStrategy;
+import org.antlr.v4.runtime.atn.PredictionMode;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
+import org.antlr.v4.runtime.tree.ParseTree;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parse tree of the tokens. In two stage mode the tokens are first parsed with SLL prediction, which is much faster
+ * than full LL, bailing out on the first error. Only the sources SLL cannot parse are parsed again with LL, which
+ * also reports the actual syntax errors.
+ */
+@Slf4j
+public class ParseStage implements TokenStage<ParseTree> {
+
+	private final boolean twoStage;
+
+	private final AtomicLong sllCount = new AtomicLong();
+
+	private final AtomicLong llCount = new AtomicLong();
+
+	public ParseStage(boolean twoStage) {
+
+		this.twoStage = twoStage;
+	}
+
+	@Override
+	public ParseTree apply(TokenBuffer tokens) {
+
+		return apply(tokens, ParseBudget.unlimited());
+	}
+
+	/**
+	 * Parses the tokens within the given budget, shared by both stages.
+	 */
+	public ParseTree apply(TokenBuffer tokens, ParseBudget budget) {
+
+		if (twoStage) {
+			CPP14Parser parser = new CPP14Parser(tokens.newTokenStream());
+			parser.removeErrorListeners();
+			parser.addParseListener(budget.parseListener());
+			parser.setErrorHandler(new BailErrorStrategy());
+			parser.getInterpreter().setPredictionMode(PredictionMode.SLL);
+			try {
+				ParseTree tree = parser.translationunit();
+				sllCount.incrementAndGet();
+				return tree;
+			} catch (ParseCancellationException e) {
+				log.debug("SLL parsing failed, parsing again with LL");
+			}
+		}
+
+		CPP14Parser parser = new CPP14Parser(tokens.newTokenStream());
+		parser.addErrorListener(new ParsingErrorListener());
+		parser.addParseListener(budget.parseListener());
+		ParseTree tree = parser.translationunit();
+		llCount.incrementAndGet();
+		return tree;
+	}
+
+	/**
+	 * Logs and resets the number of sources parsed by each stage.
+	 */
+	public void logStatistics() {
+
+		long sll = sllCount.getAndSet(0);
+		long ll = llCount.getAndSet(0);
+		if (twoStage) {
+			log.info("Parsed sources: {} with SLL, {} needed the LL fallback", sll, ll);
+		} else {
+			log.info("Parsed sources: {} with LL", ll);
+		}
+	}
+
+}
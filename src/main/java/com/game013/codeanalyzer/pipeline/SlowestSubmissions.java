@@ -0,0 +1,81 @@
+package com.game013.codeanalyzer.pipeline;
+
+import com.game013.codeanalyzer.constant.MetricStatus;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the N submissions that took the longest to analyze, to be reported at the end of a run.
+ */
+@Slf4j
+public class SlowestSubmissions {
+
+	private static final Comparator<Entry> BY_TIME = Comparator.comparingLong(entry -> entry.nanos);
+
+	private final int size;
+
+	private final PriorityQueue<Entry> slowest = new PriorityQueue<>(BY_TIME);
+
+	public SlowestSubmissions(int size) {
+
+		this.size = size;
+	}
+
+	/**
+	 * Records the analysis time of a submission, with a null status when the analysis failed.
+	 */
+	public synchronized void record(long submissionId, long nanos, MetricStatus status) {
+
+		if (size <= 0) {
+			return;
+		}
+		if (slowest.size() < size) {
+			slowest.add(new Entry(submissionId, nanos, status));
+		} else if (slowest.peek().nanos < nanos) {
+			slowest.poll();
+			slowest.add(new Entry(submissionId, nanos, status));
+		}
+	}
+
+	/**
+	 * Logs the slowest submissions, slowest first, and starts over.
+	 */
+	public synchronized void logReport() {
+
+		if (slowest.isEmpty()) {
+			return;
+		}
+		List<Entry> entries = new ArrayList<>(slowest);
+		entries.sort(BY_TIME.reversed());
+		StringBuilder report = new StringBuilder();
+		for (Entry entry : entries) {
+			report.append(String.format("%n\tsubmission [%d]: %d ms, %s", entry.submissionId,
+					TimeUnit.NANOSECONDS.toMillis(entry.nanos), entry.status != null ? entry.status : "FAILED"));
+		}
+		log.info("Slowest {} submissions:{}", entries.size(), report);
+		slowest.clear();
+	}
+
+	private static class Entry {
+
+		private final long submissionId;
+
+		private final long nanos;
+
+		private final MetricStatus status;
+
+		private Entry(long submissionId, long nanos, MetricStatus status) {
+
+			this.submissionId = submissionId;
+			this.nanos = nanos;
+			this.status = status;
+		}
+
+	}
+
+}
@@ -0,0 +1,56 @@
+package com.game013.codeanalyzer.pipeline;
+
+import com.game013.cppgrammar.CPP14Lexer;
+import org.antlr.v4.runtime.Token;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Identifiers of a source, numbered from 0 in order of first appearance. The text of every identifier token is read
+ * once when the table is built, so listeners can count identifiers by symbol with primitive arrays.
+ */
+public class SymbolTable {
+
+	private final int[] symbols;
+
+	private final List<String> names = new ArrayList<>();
+
+	SymbolTable(List<Token> tokens) {
+
+		symbols = new int[tokens.size()];
+		Arrays.fill(symbols, -1);
+		Map<String, Integer> index = new HashMap<>();
+		for (int i = 0; i < tokens.size(); ++i) {
+			Token token = tokens.get(i);
+			if (token.getType() == CPP14Lexer.Identifier) {
+				symbols[i] = index.computeIfAbsent(token.getText(), name -> {
+					names.add(name);
+					return names.size() - 1;
+				});
+			}
+		}
+	}
+
+	/**
+	 * Symbol of the token at the given index, or -1 if the token is not an identifier.
+	 */
+	public int symbol(int tokenIndex) {
+
+		return tokenIndex >= 0 && tokenIndex < symbols.length ? symbols[tokenIndex] : -1;
+	}
+
+	public String name(int symbol) {
+
+		return names.get(symbol);
+	}
+
+	public int size() {
+
+		return names.size();
+	}
+
+}
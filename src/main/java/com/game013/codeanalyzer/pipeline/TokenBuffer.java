@@ -0,0 +1,158 @@
+package com.game013.codeanalyzer.pipeline;
+
+import com.game013.cppgrammar.CPP14Lexer;
+import org.antlr.v4.runtime.CharStreams;
+import org.antlr.v4.runtime.CommonTokenStream;
+import org.antlr.v4.runtime.ListTokenSource;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.WritableToken;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tokens of a single source file. The source is lexed only once and the resulting buffer is shared by every
+ * {@link TokenStage} and by the parser.
+ */
+public class TokenBuffer {
+
+	private final String sourceCode;
+
+	private final List<Token> tokens;
+
+	/**
+	 * EOF token of the lexer, kept apart so token stages only see the source tokens.
+	 */
+	private final Token eof;
+
+	private final int[] types;
+
+	/**
+	 * Offset and length in chars of the text of every token in the source code.
+	 */
+	private final int[] textOffsets;
+
+	private final int[] textLengths;
+
+	private SymbolTable symbols;
+
+	private TokenBuffer(String sourceCode, List<Token> tokens, Token eof) {
+
+		this.sourceCode = sourceCode;
+		this.tokens = Collections.unmodifiableList(tokens);
+		this.eof = eof;
+		((WritableToken) eof).setTokenIndex(tokens.size());
+		this.types = new int[tokens.size()];
+		for (int i = 0; i < types.length; ++i) {
+			types[i] = tokens.get(i).getType();
+			// Token streams would assign the same indexes, set them upfront so they map back to this buffer
+			((WritableToken) tokens.get(i)).setTokenIndex(i);
+		}
+
+		// Token indexes in the char stream count code points, which only differ from chars outside the BMP
+		this.textOffsets = new int[tokens.size()];
+		this.textLengths = new int[tokens.size()];
+		boolean bmp = sourceCode.length() == sourceCode.codePointCount(0, sourceCode.length());
+		int codePoint = 0;
+		int offset = 0;
+		for (int i = 0; i < textOffsets.length; ++i) {
+			Token token = tokens.get(i);
+			if (bmp) {
+				textOffsets[i] = token.getStartIndex();
+				textLengths[i] = token.getStopIndex() - token.getStartIndex() + 1;
+			} else {
+				offset = sourceCode.offsetByCodePoints(offset, token.getStartIndex() - codePoint);
+				codePoint = token.getStartIndex();
+				textOffsets[i] = offset;
+				textLengths[i] = sourceCode.offsetByCodePoints(offset, token.getStopIndex() - codePoint + 1) - offset;
+			}
+		}
+	}
+
+	public static TokenBuffer lex(String sourceCode) {
+
+		CPP14Lexer lexer = new CPP14Lexer(CharStreams.fromString(sourceCode));
+		List<Token> tokens = new ArrayList<>();
+		Token token;
+		while ((token = lexer.nextToken()).getType() != Token.EOF) {
+			tokens.add(token);
+		}
+		return new TokenBuffer(sourceCode, tokens, token);
+	}
+
+	/**
+	 * Creates a new token stream over the buffered tokens, ready to be consumed by a parser. Tokens on hidden channels
+	 * are filtered by the stream exactly as they would be when reading from the lexer. The stream ends with the EOF
+	 * token of the lexer, whose text is {@code <EOF>}, and not with the one {@link ListTokenSource} would make up.
+	 */
+	public CommonTokenStream newTokenStream() {
+
+		List<Token> all = new ArrayList<>(tokens.size() + 1);
+		all.addAll(tokens);
+		all.add(eof);
+		return new CommonTokenStream(new ListTokenSource(all));
+	}
+
+	public String getSourceCode() {
+
+		return sourceCode;
+	}
+
+	/**
+	 * All tokens produced by the lexer, including those on hidden channels and excluding EOF.
+	 */
+	public List<Token> getTokens() {
+
+		return tokens;
+	}
+
+	/**
+	 * Token types in source order. The returned array is shared and must not be modified.
+	 */
+	public int[] getTypes() {
+
+		return types;
+	}
+
+	/**
+	 * Identifiers of the source, built on first use. The index of a token in this buffer is its token index.
+	 */
+	public SymbolTable getSymbols() {
+
+		if (symbols == null) {
+			symbols = new SymbolTable(tokens);
+		}
+		return symbols;
+	}
+
+	/**
+	 * Text of the tokens between the given indexes, inclusive, skipping the tokens on hidden channels as the parse tree
+	 * does. Indexes past the last token, such as the one of EOF, are ignored.
+	 */
+	public TokenText text(int from, int to) {
+
+		return new TokenText(this, from, Math.min(to, tokens.size() - 1));
+	}
+
+	boolean isDefaultChannel(int index) {
+
+		return tokens.get(index).getChannel() == Token.DEFAULT_CHANNEL;
+	}
+
+	int textOffset(int index) {
+
+		return textOffsets[index];
+	}
+
+	int textLength(int index) {
+
+		return textLengths[index];
+	}
+
+	public int size() {
+
+		return types.length;
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.game013.codeanalyzer.pipeline;
+
+import com.game013.cppgrammar.CPP14Lexer;
+import com.game013.cppgrammar.CPP14Parser;
+import org.antlr.v4.runtime.Token;
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Counts the tokens belonging to a family of token types. The result holds the total number of occurrences on the
+ * left and the number of distinct texts on the right.
+ */
+public class TokenDistributionStage implements TokenStage<Pair<Double, Double>> {
+
+	private static final int[] KEYWORD_TYPES = new int[]{
+			CPP14Parser.Alignas, CPP14Parser.Alignof, CPP14Parser.Asm, CPP14Parser.Auto, CPP14Parser.Bool,
+			CPP14Parser.Break, CPP14Parser.Case, CPP14Parser.Catch, CPP14Parser.Char, CPP14Parser.Char16, CPP14Parser.Char32, CPP14Parser.Class, CPP14Parser.Const,
+			CPP14Parser.Constexpr, CPP14Parser.Const_cast, CPP14Parser.Continue, CPP14Parser.Decltype, CPP14Parser.Default, CPP14Parser.Delete,
+			CPP14Parser.Do, CPP14Parser.Double, CPP14Parser.Dynamic_cast, CPP14Parser.Else, CPP14Parser.Enum, CPP14Parser.Explicit, CPP14Parser.Export,
+			CPP14Parser.Extern, CPP14Parser.False, CPP14Parser.Final, CPP14Parser.Float, CPP14Parser.For, CPP14Parser.Friend, CPP14Parser.Goto, CPP14Parser.If,
+			CPP14Parser.Inline, CPP14Parser.Int, CPP14Parser.Long, CPP14Parser.Mutable, CPP14Parser.Namespace, CPP14Parser.New, CPP14Parser.Noexcept,
+			CPP14Parser.Nullptr, CPP14Parser.Operator, CPP14Parser.Override, CPP14Parser.Private, CPP14Parser.Protected, CPP14Parser.Public,
+			CPP14Parser.Register, CPP14Parser.Reinterpret_cast, CPP14Parser.Return, CPP14Parser.Short, CPP14Parser.Signed, CPP14Parser.Sizeof,
+			CPP14Parser.Static, CPP14Parser.Static_assert, CPP14Parser.Static_cast, CPP14Parser.Struct, CPP14Parser.Switch, CPP14Parser.Template,
+			CPP14Parser.This, CPP14Parser.Thread_local, CPP14Parser.Throw, CPP14Parser.True, CPP14Parser.Try, CPP14Parser.Typedef, CPP14Parser.Typeid,
+			CPP14Parser.Typename, CPP14Parser.Union, CPP14Parser.Unsigned, CPP14Parser.Using, CPP14Parser.Virtual, CPP14Parser.Void, CPP14Parser.Volatile,
+			CPP14Parser.Wchar, CPP14Parser.While
+	};
+
+	private static final int[] OPERATOR_TYPES = new int[] {
+			CPP14Parser.Plus, CPP14Parser.Minus, CPP14Parser.Star, CPP14Parser.Div, CPP14Parser.Mod,
+			CPP14Parser.Caret, CPP14Parser.And, CPP14Parser.Or, CPP14Parser.Tilde, CPP14Parser.Not, CPP14Parser.Assign, CPP14Parser.Less, CPP14Parser.Greater,
+			CPP14Parser.PlusAssign, CPP14Parser.MinusAssign, CPP14Parser.StarAssign, CPP14Parser.DivAssign, CPP14Parser.ModAssign,
+			CPP14Parser.XorAssign, CPP14Parser.AndAssign, CPP14Parser.OrAssign, CPP14Parser.LeftShift, CPP14Parser.LeftShiftAssign,
+			CPP14Parser.Equal, CPP14Parser.NotEqual, CPP14Parser.LessEqual, CPP14Parser.GreaterEqual, CPP14Parser.AndAnd,
+			CPP14Parser.OrOr, CPP14Parser.PlusPlus, CPP14Parser.MinusMinus, CPP14Parser.ArrowStar, CPP14Parser.Arrow,
+			CPP14Parser.Question, CPP14Parser.Colon, CPP14Parser.Doublecolon, CPP14Parser.Semi, CPP14Parser.Dot, CPP14Parser.Comma,
+			CPP14Parser.DotStar, CPP14Parser.Ellipsis, CPP14Parser.LeftParen, CPP14Parser.LeftBracket, CPP14Parser.LeftBrace
+	};
+
+	private final boolean[] family = new boolean[CPP14Lexer.VOCABULARY.getMaxTokenType() + 1];
+
+	public TokenDistributionStage(int... tokenTypes) {
+
+		for (int type : tokenTypes) {
+			family[type] = true;
+		}
+	}
+
+	public static TokenDistributionStage keywords() {
+
+		return new TokenDistributionStage(KEYWORD_TYPES);
+	}
+
+	public static TokenDistributionStage operators() {
+
+		return new TokenDistributionStage(OPERATOR_TYPES);
+	}
+
+	@Override
+	public Pair<Double, Double> apply(TokenBuffer tokens) {
+
+		Set<String> distinct = new HashSet<>();
+		long totalCount = 0;
+		int[] types = tokens.getTypes();
+		for (int i = 0; i < types.length; ++i) {
+			if (family[types[i]]) {
+				++totalCount;
+				Token token = tokens.getTokens().get(i);
+				distinct.add(token.getText());
+			}
+		}
+		return Pair.of((double) totalCount, (double) distinct.size());
+	}
+
+}
@@ -0,0 +1,14 @@
+package com.game013.codeanalyzer.pipeline;
+
+/**
+ * A metric computed from the tokens of a submission. Stages receive the shared {@link TokenBuffer}, so adding a new
+ * token level metric does not require lexing the source again.
+ *
+ * @param <T> type of the computed value
+ */
+@FunctionalInterface
+public interface TokenStage<T> {
+
+	T apply(TokenBuffer tokens);
+
+}
@@ -0,0 +1,133 @@
+package com.game013.codeanalyzer.pipeline;
+
+/**
+ * Text of a range of tokens on the default channel, the same text {@code getText()} returns for the parse tree of the
+ * range, as a view over the source code. Equality and hash code are those of the text, so it can be used as a map key
+ * without building strings for every subtree.
+ */
+public final class TokenText {
+
+	private final TokenBuffer tokens;
+
+	private final int from;
+
+	private final int to;
+
+	private int hash;
+
+	TokenText(TokenBuffer tokens, int from, int to) {
+
+		this.tokens = tokens;
+		this.from = from;
+		this.to = to;
+	}
+
+	public int length() {
+
+		int length = 0;
+		for (int i = from; i <= to; ++i) {
+			if (tokens.isDefaultChannel(i)) {
+				length += tokens.textLength(i);
+			}
+		}
+		return length;
+	}
+
+	@Override
+	public int hashCode() {
+
+		int h = hash;
+		if (h == 0) {
+			String source = tokens.getSourceCode();
+			for (int i = from; i <= to; ++i) {
+				if (!tokens.isDefaultChannel(i)) {
+					continue;
+				}
+				for (int offset = tokens.textOffset(i), end = offset + tokens.textLength(i); offset < end; ++offset) {
+					h = 31 * h + source.charAt(offset);
+				}
+			}
+			hash = h;
+		}
+		return h;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof TokenText) || obj.hashCode() != hashCode()) {
+			return false;
+		}
+		TokenText other = (TokenText) obj;
+		Cursor left = new Cursor(this);
+		Cursor right = new Cursor(other);
+		while (left.hasNext() && right.hasNext()) {
+			if (left.next() != right.next()) {
+				return false;
+			}
+		}
+		return !left.hasNext() && !right.hasNext();
+	}
+
+	@Override
+	public String toString() {
+
+		StringBuilder builder = new StringBuilder();
+		for (Cursor cursor = new Cursor(this); cursor.hasNext(); ) {
+			builder.append(cursor.next());
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Iterates the characters of the text across token boundaries.
+	 */
+	private static final class Cursor {
+
+		private final TokenText text;
+
+		private int token;
+
+		private int offset;
+
+		private int end;
+
+		private Cursor(TokenText text) {
+
+			this.text = text;
+			this.token = text.from - 1;
+			advance();
+		}
+
+		private boolean hasNext() {
+
+			return offset < end;
+		}
+
+		private char next() {
+
+			char c = text.tokens.getSourceCode().charAt(offset++);
+			if (offset == end) {
+				advance();
+			}
+			return c;
+		}
+
+		private void advance() {
+
+			offset = end = 0;
+			while (++token <= text.to) {
+				if (text.tokens.isDefaultChannel(token) && text.tokens.textLength(token) > 0) {
+					offset = text.tokens.textOffset(token);
+					end = offset + text.tokens.textLength(token);
+					return;
+				}
+			}
+		}
+
+	}
+
+}
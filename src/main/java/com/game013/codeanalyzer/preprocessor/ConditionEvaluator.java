@@ -0,0 +1,211 @@
+package com.game013.codeanalyzer.preprocessor;
+
+import com.game013.codeanalyzer.exception.UnsupportedPreProcessorError;
+
+import java.util.List;
+
+/**
+ * Evaluates the controlling expression of an {@code #if} or {@code #elif} directive once {@code defined} operators
+ * and macros were replaced. Arithmetic is done on signed 64 bit integers.
+ */
+final class ConditionEvaluator {
+
+	private final List<PpToken> tokens;
+
+	private int position;
+
+	private ConditionEvaluator(List<PpToken> tokens) {
+
+		this.tokens = tokens;
+	}
+
+	static boolean evaluate(List<PpToken> tokens) {
+
+		ConditionEvaluator evaluator = new ConditionEvaluator(tokens);
+		long value = evaluator.conditional();
+		if (evaluator.position != tokens.size()) {
+			throw new UnsupportedPreProcessorError("Unexpected token in condition: " + tokens.get(evaluator.position));
+		}
+		return value != 0;
+	}
+
+	private long conditional() {
+
+		long condition = binary(0);
+		if (accept("?")) {
+			long whenTrue = conditional();
+			expect(":");
+			long whenFalse = conditional();
+			return condition != 0 ? whenTrue : whenFalse;
+		}
+		return condition;
+	}
+
+	/**
+	 * Precedence climbing over the binary operators, from {@code ||} (0) to the multiplicative ones (9).
+	 */
+	private long binary(int precedence) {
+
+		long left = unary();
+		while (position < tokens.size()) {
+			String operator = tokens.get(position).text;
+			int operatorPrecedence = precedence(operator);
+			if (tokens.get(position).kind != PpToken.Kind.PUNCTUATOR || operatorPrecedence < precedence) {
+				break;
+			}
+			++position;
+			long right = binary(operatorPrecedence + 1);
+			left = apply(operator, left, right);
+		}
+		return left;
+	}
+
+	private long unary() {
+
+		if (accept("!")) {
+			return unary() == 0 ? 1 : 0;
+		}
+		if (accept("~")) {
+			return ~unary();
+		}
+		if (accept("-")) {
+			return -unary();
+		}
+		if (accept("+")) {
+			return unary();
+		}
+		if (accept("(")) {
+			long value = conditional();
+			expect(")");
+			return value;
+		}
+		if (position >= tokens.size()) {
+			throw new UnsupportedPreProcessorError("Incomplete condition");
+		}
+		PpToken token = tokens.get(position++);
+		switch (token.kind) {
+			case NUMBER:
+				return parseNumber(token.text);
+			case IDENTIFIER:
+				// Identifiers left after macro replacement are zero, except the true keyword
+				return "true".equals(token.text) ? 1 : 0;
+			default:
+				throw new UnsupportedPreProcessorError("Unsupported token in condition: " + token.text);
+		}
+	}
+
+	private static int precedence(String operator) {
+
+		switch (operator) {
+			case "||":
+				return 0;
+			case "&&":
+				return 1;
+			case "|":
+				return 2;
+			case "^":
+				return 3;
+			case "&":
+				return 4;
+			case "==":
+			case "!=":
+				return 5;
+			case "<":
+			case ">":
+			case "<=":
+			case ">=":
+				return 6;
+			case "<<":
+			case ">>":
+				return 7;
+			case "+":
+			case "-":
+				return 8;
+			case "*":
+			case "/":
+			case "%":
+				return 9;
+			default:
+				return -1;
+		}
+	}
+
+	private static long apply(String operator, long left, long right) {
+
+		switch (operator) {
+			case "||":
+				return left != 0 || right != 0 ? 1 : 0;
+			case "&&":
+				return left != 0 && right != 0 ? 1 : 0;
+			case "|":
+				return left | right;
+			case "^":
+				return left ^ right;
+			case "&":
+				return left & right;
+			case "==":
+				return left == right ? 1 : 0;
+			case "!=":
+				return left != right ? 1 : 0;
+			case "<":
+				return left < right ? 1 : 0;
+			case ">":
+				return left > right ? 1 : 0;
+			case "<=":
+				return left <= right ? 1 : 0;
+			case ">=":
+				return left >= right ? 1 : 0;
+			case "<<":
+				return left << right;
+			case ">>":
+				return left >> right;
+			case "+":
+				return left + right;
+			case "-":
+				return left - right;
+			case "*":
+				return left * right;
+			default:
+				if (right == 0) {
+					throw new UnsupportedPreProcessorError("Division by zero in condition");
+				}
+				return "/".equals(operator) ? left / right : left % right;
+		}
+	}
+
+	private static long parseNumber(String text) {
+
+		String digits = text.replace("'", "").replaceFirst("[uUlL]+$", "");
+		try {
+			if (digits.startsWith("0x") || digits.startsWith("0X")) {
+				return Long.parseUnsignedLong(digits.substring(2), 16);
+			}
+			if (digits.startsWith("0b") || digits.startsWith("0B")) {
+				return Long.parseUnsignedLong(digits.substring(2), 2);
+			}
+			if (digits.length() > 1 && digits.startsWith("0")) {
+				return Long.parseUnsignedLong(digits.substring(1), 8);
+			}
+			return Long.parseUnsignedLong(digits);
+		} catch (NumberFormatException e) {
+			throw new UnsupportedPreProcessorError("Unsupported number in condition: " + text);
+		}
+	}
+
+	private boolean accept(String punctuator) {
+
+		if (position < tokens.size() && tokens.get(position).isPunctuator(punctuator)) {
+			++position;
+			return true;
+		}
+		return false;
+	}
+
+	private void expect(String punctuator) {
+
+		if (!accept(punctuator)) {
+			throw new UnsupportedPreProcessorError("Expected " + punctuator + " in condition");
+		}
+	}
+
+}
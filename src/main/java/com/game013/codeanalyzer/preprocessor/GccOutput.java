@@ -0,0 +1,76 @@
+package com.game013.codeanalyzer.preprocessor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Output of {@code gcc -E} over several source files. Linemarkers tell which file every line comes from, so the code
+ * of each source is recovered without the content of the headers it includes, and with the line numbers it has in
+ * the source.
+ */
+public final class GccOutput {
+
+	private static final Pattern LINEMARKER = Pattern.compile("^# (\\d+) \"((?:[^\"\\\\]|\\\\.)*)\"( \\d+)*$");
+
+	private GccOutput() {
+
+	}
+
+	/**
+	 * Splits the output into the code of each source file, by file name.
+	 */
+	public static Map<String, String> split(List<String> lines) {
+
+		Map<String, Source> sources = new HashMap<>();
+		Source current = null;
+		for (String line : lines) {
+			Matcher marker = LINEMARKER.matcher(line);
+			if (marker.matches()) {
+				current = sources.computeIfAbsent(marker.group(2), file -> new Source());
+				current.next = Integer.parseInt(marker.group(1));
+			} else if (current != null) {
+				current.add(line);
+			}
+		}
+
+		Map<String, String> result = new HashMap<>();
+		sources.forEach((file, source) -> result.put(file, source.toString()));
+		return result;
+	}
+
+	/**
+	 * Lines of a source file, placed at the line numbers given by the markers.
+	 */
+	private static final class Source {
+
+		private final List<String> lines = new ArrayList<>();
+
+		private int next = 1;
+
+		private void add(String line) {
+
+			while (lines.size() < next) {
+				lines.add("");
+			}
+			String previous = lines.get(next - 1);
+			lines.set(next - 1, previous.isEmpty() ? line : line.isEmpty() ? previous : previous + " " + line);
+			++next;
+		}
+
+		@Override
+		public String toString() {
+
+			StringBuilder builder = new StringBuilder();
+			for (String line : lines) {
+				builder.append(line).append('\n');
+			}
+			return builder.toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,606 @@
+package com.game013.codeanalyzer.preprocessor;
+
+import com.game013.codeanalyzer.exception.UnsupportedPreProcessorError;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.*;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * In-process replacement of {@code gcc -E} for the subset of the pre-processor used by most submissions: object-like
+ * and function-like macros (including variadic macros and the {@code #} operator), {@code #undef} and conditional
+ * groups. Include directives are removed, as the analysis only looks at the code of the submission itself, and
+ * pragmas are kept. The output keeps the lines of the source, directives become empty lines.
+ * <p>
+ * Anything outside that subset throws an {@link UnsupportedPreProcessorError}, so the caller can fall back to the
+ * external pre-processor: token pasting, predefined and reserved macros, header macros missing in
+ * {@code header-macros.properties} and directives other than the ones above.
+ */
+public class MacroPreprocessor {
+
+	private static final Map<String, Macro> HEADER_MACROS = loadHeaderMacros();
+
+	/**
+	 * Names reserved to the implementation, and the GNU mode system macros.
+	 */
+	private static final Pattern RESERVED = Pattern.compile("_[A-Z]\\w*|__[A-Z]\\w*|__\\w*__|__cplusplus|linux|unix");
+
+	/**
+	 * Macros of the standard headers, used to detect header macros without a known expansion.
+	 */
+	private static final Pattern HEADER_MACRO = Pattern.compile("U?INT(8|16|32|64|MAX|PTR|_LEAST(8|16|32|64)" +
+			"|_FAST(8|16|32|64))_(MAX|MIN|C|WIDTH)|U?INTMAX_C|(FLT|DBL|LDBL)_\\w+|M_\\w+|(PRI|SCN)\\w+|HUGE_VAL\\w*" +
+			"|INFINITY|NAN|FP_\\w+|MATH_ERR\\w+|[SU]?(CHAR|SHRT|INT|LONG|LLONG|WCHAR|WINT|SIZE|PTRDIFF|SIG_ATOMIC)" +
+			"_(MAX|MIN|WIDTH)|MB_LEN_MAX|MB_CUR_MAX|CLOCKS_PER_SEC|BUFSIZ|FILENAME_MAX|FOPEN_MAX|TMP_MAX|L_tmpnam" +
+			"|SEEK_(SET|CUR|END)|LC_\\w+|E(DOM|RANGE|ILSEQ)|RAND_MAX|EXIT_(SUCCESS|FAILURE)|EOF|NULL|assert|errno" +
+			"|offsetof|setjmp|va_(start|arg|end|copy)");
+
+	private static final String VARIADIC_PARAMETER = "__VA_ARGS__";
+
+	private final Map<String, Macro> macros = new HashMap<>();
+
+	private final Deque<Conditional> conditionals = new ArrayDeque<>();
+
+	private boolean headersIncluded;
+
+	private MacroPreprocessor() {
+
+	}
+
+	/**
+	 * Pre-processes the given source code.
+	 *
+	 * @throws UnsupportedPreProcessorError when the source uses a feature outside the supported subset
+	 */
+	public static String process(String sourceCode) {
+
+		return new MacroPreprocessor().process(PpLexer.tokenize(sourceCode));
+	}
+
+	private String process(List<PpToken> tokens) {
+
+		StringBuilder output = new StringBuilder(tokens.size() * 4);
+		List<PpToken> chunk = new ArrayList<>();
+		int lineStart = 0;
+		while (lineStart < tokens.size()) {
+			int lineEnd = lineStart;
+			while (lineEnd < tokens.size() && tokens.get(lineEnd).kind != PpToken.Kind.NEWLINE) {
+				++lineEnd;
+			}
+			List<PpToken> line = tokens.subList(lineStart, lineEnd);
+			boolean newline = lineEnd < tokens.size();
+			boolean active = isActive();
+
+			int first = nextNonBlank(line, 0);
+			if (first >= 0 && line.get(first).isPunctuator("#")) {
+				// Code lines are expanded together, as macro invocations may span several lines
+				write(expand(chunk), output);
+				chunk.clear();
+				output.append(directive(line, first + 1, active));
+			} else if (active) {
+				chunk.addAll(line);
+				if (newline) {
+					chunk.add(PpToken.NEWLINE);
+				}
+				lineStart = lineEnd + 1;
+				continue;
+			}
+			appendNewlines(line, output);
+			if (newline) {
+				output.append('\n');
+			}
+			lineStart = lineEnd + 1;
+		}
+		write(expand(chunk), output);
+		if (!conditionals.isEmpty()) {
+			throw new UnsupportedPreProcessorError("Unterminated conditional directive");
+		}
+		return output.toString();
+	}
+
+	/**
+	 * Runs a directive and returns the text it leaves in the output.
+	 */
+	private String directive(List<PpToken> line, int start, boolean active) {
+
+		List<PpToken> tokens = trim(line.subList(start, line.size()));
+		if (tokens.isEmpty()) {
+			return "";
+		}
+		PpToken name = tokens.get(0);
+		List<PpToken> arguments = trim(tokens.subList(1, tokens.size()));
+		if (name.kind != PpToken.Kind.IDENTIFIER) {
+			if (active) {
+				throw new UnsupportedPreProcessorError("Unsupported directive: " + name);
+			}
+			return "";
+		}
+
+		switch (name.text) {
+			case "if":
+				conditionals.push(new Conditional(active, active && evaluate(arguments)));
+				return "";
+			case "ifdef":
+			case "ifndef":
+				conditionals.push(new Conditional(active, active && isDefined(arguments) == "ifdef".equals(name.text)));
+				return "";
+			case "elif":
+				currentConditional(name).next(false, () -> evaluate(arguments));
+				return "";
+			case "else":
+				currentConditional(name).next(true, () -> true);
+				return "";
+			case "endif":
+				currentConditional(name);
+				conditionals.pop();
+				return "";
+			default:
+				break;
+		}
+		if (!active) {
+			return "";
+		}
+		switch (name.text) {
+			case "define":
+				define(arguments);
+				return "";
+			case "undef":
+				macros.remove(identifier(arguments).text);
+				return "";
+			case "include":
+				include(arguments);
+				return "";
+			case "pragma":
+				return text(trim(line));
+			default:
+				throw new UnsupportedPreProcessorError("Unsupported directive: " + name);
+		}
+	}
+
+	private void define(List<PpToken> arguments) {
+
+		PpToken name = identifier(arguments);
+		if ("defined".equals(name.text) || RESERVED.matcher(name.text).matches()) {
+			throw new UnsupportedPreProcessorError("Definition of reserved macro: " + name);
+		}
+		int bodyStart = 1;
+		List<String> parameters = null;
+		if (arguments.size() > 1 && arguments.get(1).isPunctuator("(")) {
+			parameters = new ArrayList<>();
+			int position = nextNonBlank(arguments, 2);
+			if (position >= 0 && arguments.get(position).isPunctuator(")")) {
+				bodyStart = position + 1;
+			} else {
+				while (true) {
+					PpToken token = position < 0 ? null : arguments.get(position);
+					if (token != null && token.isPunctuator("...")) {
+						parameters.add(VARIADIC_PARAMETER);
+					} else if (token != null && token.kind == PpToken.Kind.IDENTIFIER && !isVariadic(parameters)) {
+						parameters.add(token.text);
+					} else {
+						throw new UnsupportedPreProcessorError("Invalid macro parameters: " + name);
+					}
+					position = nextNonBlank(arguments, position + 1);
+					if (position < 0 || isVariadic(parameters) && !arguments.get(position).isPunctuator(")")) {
+						throw new UnsupportedPreProcessorError("Invalid macro parameters: " + name);
+					}
+					if (arguments.get(position).isPunctuator(")")) {
+						break;
+					}
+					if (!arguments.get(position).isPunctuator(",")) {
+						throw new UnsupportedPreProcessorError("Invalid macro parameters: " + name);
+					}
+					position = nextNonBlank(arguments, position + 1);
+				}
+				bodyStart = position + 1;
+			}
+		}
+
+		List<PpToken> body = new ArrayList<>();
+		for (PpToken token : trim(arguments.subList(Math.min(bodyStart, arguments.size()), arguments.size()))) {
+			if (token.isPunctuator("##") || token.is(PpToken.Kind.IDENTIFIER, "__VA_OPT__")) {
+				throw new UnsupportedPreProcessorError("Token pasting in macro: " + name);
+			}
+			if (!token.isBlank()) {
+				body.add(token);
+			} else if (!body.isEmpty() && !body.get(body.size() - 1).isBlank()) {
+				body.add(PpToken.SPACE);
+			}
+		}
+		Macro macro = new Macro(parameters, body);
+		if (parameters != null) {
+			for (int i = 0; i < body.size(); ++i) {
+				if (body.get(i).isPunctuator("#")) {
+					int parameter = nextNonBlank(body, i + 1);
+					if (parameter < 0 || macro.parameterIndex(body.get(parameter).text) < 0) {
+						throw new UnsupportedPreProcessorError("Invalid stringification in macro: " + name);
+					}
+				}
+			}
+		}
+		macros.put(name.text, macro);
+	}
+
+	private void include(List<PpToken> arguments) {
+
+		if (arguments.isEmpty() || !arguments.get(0).isPunctuator("<")) {
+			// Local headers are not available to the analysis, gcc reports the missing file
+			throw new UnsupportedPreProcessorError("Unsupported include: " + text(arguments));
+		}
+		if (!headersIncluded) {
+			headersIncluded = true;
+			HEADER_MACROS.forEach(macros::putIfAbsent);
+		}
+	}
+
+	private boolean evaluate(List<PpToken> arguments) {
+
+		List<PpToken> condition = new ArrayList<>();
+		for (int i = 0; i < arguments.size(); ++i) {
+			PpToken token = arguments.get(i);
+			if (!token.is(PpToken.Kind.IDENTIFIER, "defined")) {
+				condition.add(token);
+				continue;
+			}
+			int operand = nextNonBlank(arguments, i + 1);
+			boolean parenthesized = operand >= 0 && arguments.get(operand).isPunctuator("(");
+			if (parenthesized) {
+				operand = nextNonBlank(arguments, operand + 1);
+			}
+			if (operand < 0) {
+				throw new UnsupportedPreProcessorError("Invalid defined operator");
+			}
+			i = operand;
+			if (parenthesized) {
+				i = nextNonBlank(arguments, operand + 1);
+				if (i < 0 || !arguments.get(i).isPunctuator(")")) {
+					throw new UnsupportedPreProcessorError("Invalid defined operator");
+				}
+			}
+			boolean defined = isDefined(arguments.subList(operand, operand + 1));
+			condition.add(new PpToken(PpToken.Kind.NUMBER, defined ? "1" : "0"));
+		}
+
+		List<PpToken> expression = new ArrayList<>();
+		for (PpToken token : expand(condition)) {
+			if (!token.isBlank()) {
+				expression.add(token);
+			}
+		}
+		return ConditionEvaluator.evaluate(expression);
+	}
+
+	private boolean isDefined(List<PpToken> arguments) {
+
+		String name = identifier(arguments).text;
+		if (macros.containsKey(name)) {
+			return true;
+		}
+		checkUnknownIdentifier(name);
+		return false;
+	}
+
+	/**
+	 * Replaces the macros of the given tokens, rescanning every replacement with the name of the macro hidden.
+	 */
+	private List<PpToken> expand(List<PpToken> tokens) {
+
+		List<PpToken> output = new ArrayList<>(tokens.size());
+		Deque<PpToken> pending = new ArrayDeque<>(tokens);
+		while (!pending.isEmpty()) {
+			PpToken token = pending.poll();
+			Macro macro = token.kind == PpToken.Kind.IDENTIFIER ? macros.get(token.text) : null;
+			if (macro == null || token.isHidden(token.text)) {
+				if (macro == null && token.kind == PpToken.Kind.IDENTIFIER) {
+					checkUnknownIdentifier(token.text);
+				}
+				output.add(token);
+				continue;
+			}
+
+			Set<String> hideSet = new HashSet<>(token.hideSet);
+			hideSet.add(token.text);
+			if (macro.parameters == null) {
+				pushAll(pending, macro.substitute(null, hideSet, this::expand));
+				continue;
+			}
+
+			List<PpToken> skipped = new ArrayList<>();
+			while (!pending.isEmpty() && pending.peek().isBlank()) {
+				skipped.add(pending.poll());
+			}
+			if (pending.isEmpty() || !pending.peek().isPunctuator("(")) {
+				// A function-like macro name without arguments is an ordinary identifier
+				output.add(token);
+				pushAll(pending, skipped);
+				continue;
+			}
+			pending.poll();
+			int newlines = (int) skipped.stream().filter(PpToken.NEWLINE::equals).count();
+
+			List<List<PpToken>> arguments = new ArrayList<>();
+			List<PpToken> argument = new ArrayList<>();
+			for (int depth = 0; ; ) {
+				PpToken next = pending.poll();
+				if (next == null) {
+					throw new UnsupportedPreProcessorError("Unterminated invocation of macro: " + token);
+				}
+				if (next.kind == PpToken.Kind.NEWLINE) {
+					++newlines;
+					next = PpToken.SPACE;
+				} else if (next.isPunctuator("(")) {
+					++depth;
+				} else if (next.isPunctuator(")") && depth-- == 0) {
+					break;
+				} else if (next.isPunctuator(",") && depth == 0
+						&& !(macro.isVariadic() && arguments.size() == macro.parameters.size() - 1)) {
+					arguments.add(argument);
+					argument = new ArrayList<>();
+					continue;
+				}
+				argument.add(next);
+			}
+			arguments.add(argument);
+			if (macro.parameters.isEmpty() && arguments.size() == 1 && trim(arguments.get(0)).isEmpty()) {
+				arguments.clear();
+			} else if (macro.isVariadic() && arguments.size() == macro.parameters.size() - 1) {
+				arguments.add(new ArrayList<>());
+			}
+			if (arguments.size() != macro.parameters.size()) {
+				throw new UnsupportedPreProcessorError("Wrong number of arguments for macro: " + token);
+			}
+
+			// Lines taken by the invocation are restored after its replacement
+			for (int i = 0; i < newlines; ++i) {
+				pending.push(PpToken.NEWLINE);
+			}
+			pushAll(pending, macro.substitute(arguments, hideSet, this::expand));
+		}
+		return output;
+	}
+
+	private void checkUnknownIdentifier(String name) {
+
+		if (RESERVED.matcher(name).matches()) {
+			throw new UnsupportedPreProcessorError("Predefined or reserved macro: " + name);
+		}
+		if (headersIncluded && HEADER_MACRO.matcher(name).matches()) {
+			throw new UnsupportedPreProcessorError("Unknown header macro: " + name);
+		}
+	}
+
+	private Conditional currentConditional(PpToken directive) {
+
+		if (conditionals.isEmpty()) {
+			throw new UnsupportedPreProcessorError("Unbalanced directive: " + directive);
+		}
+		return conditionals.peek();
+	}
+
+	private boolean isActive() {
+
+		return conditionals.isEmpty() || conditionals.peek().active;
+	}
+
+	/**
+	 * Writes the tokens, separating the tokens of a replacement from their neighbours when they would otherwise be
+	 * read as a single token.
+	 */
+	private static void write(List<PpToken> tokens, StringBuilder output) {
+
+		PpToken previous = null;
+		for (PpToken token : tokens) {
+			if (previous != null && !previous.isBlank() && !token.isBlank() && (previous.expanded || token.expanded)
+					&& wouldPaste(previous, token)) {
+				output.append(' ');
+			}
+			output.append(token.text);
+			previous = token;
+		}
+	}
+
+	private static boolean wouldPaste(PpToken left, PpToken right) {
+
+		try {
+			List<PpToken> tokens = PpLexer.tokenize(left.text + right.text);
+			return tokens.size() != 2 || !tokens.get(0).text.equals(left.text);
+		} catch (UnsupportedPreProcessorError e) {
+			return true;
+		}
+	}
+
+	private static void appendNewlines(List<PpToken> line, StringBuilder output) {
+
+		for (PpToken token : line) {
+			for (int i = 0; i < token.text.length(); ++i) {
+				if (token.text.charAt(i) == '\n') {
+					output.append('\n');
+				}
+			}
+		}
+	}
+
+	private static PpToken identifier(List<PpToken> arguments) {
+
+		if (arguments.isEmpty() || arguments.get(0).kind != PpToken.Kind.IDENTIFIER) {
+			throw new UnsupportedPreProcessorError("Expected macro name: " + text(arguments));
+		}
+		return arguments.get(0);
+	}
+
+	private static int nextNonBlank(List<PpToken> tokens, int from) {
+
+		for (int i = from; i < tokens.size(); ++i) {
+			if (!tokens.get(i).isBlank()) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static List<PpToken> trim(List<PpToken> tokens) {
+
+		int from = 0;
+		int to = tokens.size();
+		while (from < to && tokens.get(from).isBlank()) {
+			++from;
+		}
+		while (to > from && tokens.get(to - 1).isBlank()) {
+			--to;
+		}
+		return tokens.subList(from, to);
+	}
+
+	private static String text(List<PpToken> tokens) {
+
+		StringBuilder builder = new StringBuilder();
+		for (PpToken token : tokens) {
+			builder.append(token.isBlank() ? " " : token.text);
+		}
+		return builder.toString();
+	}
+
+	private static void pushAll(Deque<PpToken> pending, List<PpToken> tokens) {
+
+		for (int i = tokens.size() - 1; i >= 0; --i) {
+			pending.push(tokens.get(i));
+		}
+	}
+
+	private static boolean isVariadic(List<String> parameters) {
+
+		return !parameters.isEmpty() && VARIADIC_PARAMETER.equals(parameters.get(parameters.size() - 1));
+	}
+
+	private static Map<String, Macro> loadHeaderMacros() {
+
+		Properties properties = new Properties();
+		try (InputStream input = MacroPreprocessor.class.getResourceAsStream("/header-macros.properties")) {
+			properties.load(input);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		Map<String, Macro> headerMacros = new HashMap<>();
+		for (String name : properties.stringPropertyNames()) {
+			List<PpToken> body = PpLexer.tokenize(properties.getProperty(name));
+			headerMacros.put(name, new Macro(null, body));
+		}
+		return Collections.unmodifiableMap(headerMacros);
+	}
+
+	private static final class Macro {
+
+		private final List<String> parameters;
+
+		private final List<PpToken> body;
+
+		private Macro(List<String> parameters, List<PpToken> body) {
+
+			this.parameters = parameters;
+			this.body = body;
+		}
+
+		private boolean isVariadic() {
+
+			return parameters != null && MacroPreprocessor.isVariadic(parameters);
+		}
+
+		private int parameterIndex(String name) {
+
+			return parameters == null ? -1 : parameters.indexOf(name);
+		}
+
+		/**
+		 * Replacement of an invocation: parameters are replaced by their fully expanded argument, or by the spelling
+		 * of the argument when stringified.
+		 */
+		private List<PpToken> substitute(List<List<PpToken>> arguments, Set<String> hideSet,
+				Function<List<PpToken>, List<PpToken>> expander) {
+
+			List<PpToken> replacement = new ArrayList<>(body.size());
+			List<List<PpToken>> expandedArguments = arguments == null ? null :
+					new ArrayList<>(Collections.nCopies(arguments.size(), null));
+			for (int i = 0; i < body.size(); ++i) {
+				PpToken token = body.get(i);
+				if (arguments != null && token.isPunctuator("#")) {
+					i = nextNonBlank(body, i + 1);
+					replacement.add(new PpToken(PpToken.Kind.LITERAL,
+							stringify(trim(arguments.get(parameterIndex(body.get(i).text))))));
+					continue;
+				}
+				int index = token.kind == PpToken.Kind.IDENTIFIER ? parameterIndex(token.text) : -1;
+				if (index < 0) {
+					replacement.add(token);
+					continue;
+				}
+				if (expandedArguments.get(index) == null) {
+					expandedArguments.set(index, expander.apply(trim(arguments.get(index))));
+				}
+				replacement.addAll(expandedArguments.get(index));
+			}
+
+			List<PpToken> result = new ArrayList<>(replacement.size());
+			for (PpToken token : replacement) {
+				result.add(token.expandedFrom(hideSet));
+			}
+			return result;
+		}
+
+		private static String stringify(List<PpToken> argument) {
+
+			StringBuilder builder = new StringBuilder("\"");
+			boolean space = false;
+			for (PpToken token : argument) {
+				if (token.isBlank()) {
+					space = true;
+					continue;
+				}
+				if (space) {
+					builder.append(' ');
+					space = false;
+				}
+				if (token.kind == PpToken.Kind.LITERAL) {
+					builder.append(token.text.replace("\\", "\\\\").replace("\"", "\\\""));
+				} else {
+					builder.append(token.text);
+				}
+			}
+			return builder.append('"').toString();
+		}
+
+	}
+
+	private static final class Conditional {
+
+		private final boolean parentActive;
+
+		private boolean taken;
+
+		private boolean active;
+
+		private boolean sawElse;
+
+		private Conditional(boolean parentActive, boolean active) {
+
+			this.parentActive = parentActive;
+			this.taken = active;
+			this.active = active;
+		}
+
+		private void next(boolean isElse, BooleanSupplier condition) {
+
+			if (sawElse) {
+				throw new UnsupportedPreProcessorError("Directive after #else");
+			}
+			sawElse = isElse;
+			active = parentActive && !taken && condition.getAsBoolean();
+			taken |= active;
+		}
+
+	}
+
+}
@@ -0,0 +1,224 @@
+package com.game013.codeanalyzer.preprocessor;
+
+import com.game013.codeanalyzer.exception.UnsupportedPreProcessorError;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a source file into pre-processing tokens. Line splices are removed, and the lines they join are restored
+ * as empty lines right after the logical line so the output keeps the line numbers of the source.
+ */
+final class PpLexer {
+
+	private static final String[] PUNCTUATORS = {
+			"...", "<<=", ">>=", "->*", "##", "::", "->", "++", "--", "<<", ">>", "<=", ">=", "==", "!=", "&&", "||",
+			"+=", "-=", "*=", "/=", "%=", "^=", "&=", "|=", ".*"
+	};
+
+	private final String source;
+
+	private int position;
+
+	private PpLexer(String source) {
+
+		this.source = source;
+	}
+
+	static List<PpToken> tokenize(String source) {
+
+		return new PpLexer(splice(source)).tokenize();
+	}
+
+	private static String splice(String source) {
+
+		if (source.indexOf('\\') < 0) {
+			return source;
+		}
+		StringBuilder builder = new StringBuilder(source.length());
+		int pendingLines = 0;
+		for (int i = 0; i < source.length(); ++i) {
+			char c = source.charAt(i);
+			if (c == '\\') {
+				int next = i + 1;
+				while (next < source.length() && (source.charAt(next) == ' ' || source.charAt(next) == '\t'
+						|| source.charAt(next) == '\r')) {
+					++next;
+				}
+				if (next < source.length() && source.charAt(next) == '\n') {
+					++pendingLines;
+					i = next;
+					continue;
+				}
+			}
+			builder.append(c);
+			if (c == '\n') {
+				for (; pendingLines > 0; --pendingLines) {
+					builder.append('\n');
+				}
+			}
+		}
+		return builder.toString();
+	}
+
+	private List<PpToken> tokenize() {
+
+		List<PpToken> tokens = new ArrayList<>();
+		while (position < source.length()) {
+			tokens.add(next());
+		}
+		return tokens;
+	}
+
+	private PpToken next() {
+
+		int start = position;
+		char c = source.charAt(position);
+		if (c == '\n') {
+			++position;
+			return PpToken.NEWLINE;
+		}
+		if (c == ' ' || c == '\t' || c == '\r' || c == '\f' || c == '\u000B') {
+			while (position < source.length() && isSpace(source.charAt(position))) {
+				++position;
+			}
+			return new PpToken(PpToken.Kind.WHITESPACE, source.substring(start, position));
+		}
+		if (source.startsWith("//", position)) {
+			while (position < source.length() && source.charAt(position) != '\n') {
+				++position;
+			}
+			return PpToken.SPACE;
+		}
+		if (source.startsWith("/*", position)) {
+			int end = source.indexOf("*/", position + 2);
+			if (end < 0) {
+				throw new UnsupportedPreProcessorError("Unterminated comment");
+			}
+			position = end + 2;
+			// A comment is a single space, lines inside it are kept when the comment is not part of a directive
+			return new PpToken(PpToken.Kind.WHITESPACE, source.substring(start, position).contains("\n") ?
+					" " + newlines(source.substring(start, position)) : " ");
+		}
+		if (Character.isJavaIdentifierStart(c) && c != '$') {
+			while (position < source.length() && isIdentifierPart(source.charAt(position))) {
+				++position;
+			}
+			String identifier = source.substring(start, position);
+			if (position < source.length() && isEncodingPrefix(identifier)
+					&& (source.charAt(position) == '"' || source.charAt(position) == '\'')) {
+				return literal(start);
+			}
+			return new PpToken(PpToken.Kind.IDENTIFIER, identifier);
+		}
+		if (Character.isDigit(c) || (c == '.' && position + 1 < source.length()
+				&& Character.isDigit(source.charAt(position + 1)))) {
+			++position;
+			while (position < source.length()) {
+				char d = source.charAt(position);
+				if ((d == '+' || d == '-') && "eEpP".indexOf(source.charAt(position - 1)) >= 0) {
+					++position;
+				} else if (d == '\'' && position + 1 < source.length()
+						&& isIdentifierPart(source.charAt(position + 1))) {
+					position += 2;
+				} else if (isIdentifierPart(d) || d == '.') {
+					++position;
+				} else {
+					break;
+				}
+			}
+			return new PpToken(PpToken.Kind.NUMBER, source.substring(start, position));
+		}
+		if (c == '"' || c == '\'') {
+			return literal(start);
+		}
+		for (String punctuator : PUNCTUATORS) {
+			if (source.startsWith(punctuator, position)) {
+				position += punctuator.length();
+				return new PpToken(PpToken.Kind.PUNCTUATOR, punctuator);
+			}
+		}
+		++position;
+		return new PpToken(PpToken.Kind.PUNCTUATOR, String.valueOf(c));
+	}
+
+	/**
+	 * String or character literal starting at the given position, with its optional encoding prefix, raw string
+	 * delimiters and user defined suffix.
+	 */
+	private PpToken literal(int start) {
+
+		while (source.charAt(position) != '"' && source.charAt(position) != '\'') {
+			++position;
+		}
+		char quote = source.charAt(position);
+		if (quote == '"' && position > start && source.charAt(position - 1) == 'R') {
+			int open = source.indexOf('(', position);
+			if (open < 0) {
+				throw new UnsupportedPreProcessorError("Invalid raw string literal");
+			}
+			String terminator = ")" + source.substring(position + 1, open) + "\"";
+			int end = source.indexOf(terminator, open);
+			if (end < 0) {
+				throw new UnsupportedPreProcessorError("Unterminated raw string literal");
+			}
+			position = end + terminator.length();
+		} else {
+			++position;
+			while (position < source.length() && source.charAt(position) != quote) {
+				if (source.charAt(position) == '\n') {
+					throw new UnsupportedPreProcessorError("Unterminated literal");
+				}
+				position += source.charAt(position) == '\\' ? 2 : 1;
+			}
+			if (position >= source.length()) {
+				throw new UnsupportedPreProcessorError("Unterminated literal");
+			}
+			++position;
+		}
+		while (position < source.length() && isIdentifierPart(source.charAt(position))) {
+			++position;
+		}
+		return new PpToken(PpToken.Kind.LITERAL, source.substring(start, position));
+	}
+
+	private static boolean isSpace(char c) {
+
+		return c == ' ' || c == '\t' || c == '\r' || c == '\f' || c == '\u000B';
+	}
+
+	private static boolean isIdentifierPart(char c) {
+
+		return Character.isJavaIdentifierPart(c) && c != '$';
+	}
+
+	private static boolean isEncodingPrefix(String identifier) {
+
+		switch (identifier) {
+			case "u8":
+			case "u":
+			case "U":
+			case "L":
+			case "R":
+			case "u8R":
+			case "uR":
+			case "UR":
+			case "LR":
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private static String newlines(String text) {
+
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < text.length(); ++i) {
+			if (text.charAt(i) == '\n') {
+				builder.append('\n');
+			}
+		}
+		return builder.toString();
+	}
+
+}
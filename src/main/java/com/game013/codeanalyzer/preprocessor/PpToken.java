@@ -0,0 +1,78 @@
+package com.game013.codeanalyzer.preprocessor;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Pre-processing token. Comments are whitespace tokens, and every token keeps the names of the macros that produced
+ * it so they are not expanded again when rescanning.
+ */
+class PpToken {
+
+	enum Kind {
+		IDENTIFIER, NUMBER, LITERAL, PUNCTUATOR, WHITESPACE, NEWLINE
+	}
+
+	static final PpToken SPACE = new PpToken(Kind.WHITESPACE, " ");
+
+	static final PpToken NEWLINE = new PpToken(Kind.NEWLINE, "\n");
+
+	final Kind kind;
+
+	final String text;
+
+	final Set<String> hideSet;
+
+	final boolean expanded;
+
+	PpToken(Kind kind, String text) {
+
+		this(kind, text, Collections.emptySet(), false);
+	}
+
+	private PpToken(Kind kind, String text, Set<String> hideSet, boolean expanded) {
+
+		this.kind = kind;
+		this.text = text;
+		this.hideSet = hideSet;
+		this.expanded = expanded;
+	}
+
+	boolean is(Kind kind, String text) {
+
+		return this.kind == kind && this.text.equals(text);
+	}
+
+	boolean isPunctuator(String text) {
+
+		return is(Kind.PUNCTUATOR, text);
+	}
+
+	boolean isBlank() {
+
+		return kind == Kind.WHITESPACE || kind == Kind.NEWLINE;
+	}
+
+	boolean isHidden(String macro) {
+
+		return hideSet.contains(macro);
+	}
+
+	/**
+	 * Copy of this token as part of the expansion of the given macro.
+	 */
+	PpToken expandedFrom(Set<String> hideSet) {
+
+		Set<String> merged = new HashSet<>(this.hideSet);
+		merged.addAll(hideSet);
+		return new PpToken(kind, text, merged, true);
+	}
+
+	@Override
+	public String toString() {
+
+		return text;
+	}
+
+}
@@ -1,8 +1,15 @@
 package com.game013.codeanalyzer.repository;
 
 import com.game013.codeanalyzer.model.Metric;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+import java.util.List;
 
 public interface MetricRepository extends JpaRepository<Metric, Long> {
 
+	@Query("SELECT m FROM Metric m WHERE m.submissionId > ?1 ORDER BY m.submissionId")
+	List<Metric> findPage(Long lastId, Pageable pageable);
+
 }
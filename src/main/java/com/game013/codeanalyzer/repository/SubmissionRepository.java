@@ -1,24 +1,29 @@
 package com.game013.codeanalyzer.repository;
 
 import com.game013.codeanalyzer.model.Submission;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 
 import java.util.List;
 
+/**
+ * Submission queries are keyset paginated: every method returns the page of submissions whose id is greater than
+ * {@code lastId}, ordered by id, so the corpus is never loaded in memory at once.
+ */
 public interface SubmissionRepository extends JpaRepository<Submission, Long> {
 
 	@Query("SELECT s FROM Submission s LEFT JOIN Metric m ON m.submissionId = s.id WHERE s.sourceCode IS NOT NULL AND" +
 			" s.download = true AND s.programmingLanguage like '%C++%' AND s.problemIndex = ?1 AND m.submissionId IS " +
-			"NULL ")
-	List<Submission> findCppCode(String problemIndex);
+			"NULL AND s.id > ?2 ORDER BY s.id")
+	List<Submission> findCppCode(String problemIndex, Long lastId, Pageable pageable);
 
 	@Query("SELECT s FROM Submission s WHERE s.sourceCode IS NOT NULL AND" +
-			" s.download = true AND s.programmingLanguage like '%C++%' ORDER BY s.id")
-	List<Submission> findCppCode();
+			" s.download = true AND s.programmingLanguage like '%C++%' AND s.id > ?1 ORDER BY s.id")
+	List<Submission> findCppCode(Long lastId, Pageable pageable);
 
 	@Query("SELECT s FROM Submission s LEFT JOIN Metric m ON m.submissionId = s.id WHERE s.sourceCode IS NOT NULL AND" +
-			" s.download = true AND m.completed = true ORDER BY s.id")
-	List<Submission> findCompletedCode();
+			" s.download = true AND m.completed = true AND s.id > ?1 ORDER BY s.id")
+	List<Submission> findCompletedCode(Long lastId, Pageable pageable);
 
 }
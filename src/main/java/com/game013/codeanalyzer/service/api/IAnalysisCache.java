@@ -0,0 +1,26 @@
+package com.game013.codeanalyzer.service.api;
+
+import com.game013.codeanalyzer.cache.ContentKey;
+import com.game013.codeanalyzer.model.Metric;
+import com.game013.codeanalyzer.ngram.NgramSegmentStore;
+
+public interface IAnalysisCache {
+
+	/**
+	 * Key of a source code, or {@code null} when the cache is disabled.
+	 */
+	ContentKey key(String sourceCode);
+
+	/**
+	 * Cached metric of the source with the given key, for the given submission, or {@code null} when it is not cached.
+	 */
+	Metric findMetric(ContentKey key, long submissionId);
+
+	NgramSegmentStore.Record findNgrams(ContentKey key);
+
+	void putMetric(ContentKey key, Metric metric);
+
+	void putNgrams(ContentKey key, NgramSegmentStore.Record nGrams);
+
+	void logStatistics();
+}
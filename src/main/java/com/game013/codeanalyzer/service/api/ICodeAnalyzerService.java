@@ -9,4 +9,8 @@ public interface ICodeAnalyzerService {
 	void extractNgrams();
 
 	void ngramMeanings();
+
+	void analyzeCodeAndNgrams();
+
+	void exportCorpus();
 }
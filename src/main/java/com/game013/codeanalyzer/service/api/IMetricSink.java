@@ -0,0 +1,28 @@
+package com.game013.codeanalyzer.service.api;
+
+import com.game013.codeanalyzer.model.Metric;
+import com.game013.codeanalyzer.ngram.SparseFeatureVector;
+
+import java.util.SortedSet;
+
+public interface IMetricSink {
+
+	void accept(Metric metric);
+
+	/**
+	 * Updates only the n-gram feature columns of an already saved metric row.
+	 */
+	void acceptNgramFeatures(Metric metric);
+
+	/**
+	 * Saves the sparse n-gram feature vector of order {@code n} of a submission.
+	 */
+	void acceptFeatureVector(long submissionId, int n, SparseFeatureVector vector);
+
+	void flush();
+
+	/**
+	 * Submissions with a row that could not be written, even one by one.
+	 */
+	SortedSet<Long> getFailedSubmissions();
+}
@@ -0,0 +1,16 @@
+package com.game013.codeanalyzer.service.api;
+
+import org.apache.commons.lang3.tuple.Pair;
+
+import java.util.concurrent.CompletableFuture;
+
+public interface IPreProcessorService {
+
+	/**
+	 * Pre-processes the source code of a submission, returning the resulting code and whether the source required
+	 * pre-processing.
+	 */
+	CompletableFuture<Pair<String, Boolean>> preProcess(String sourceCode, long submissionId);
+
+	void logStatistics();
+}
@@ -0,0 +1,25 @@
+package com.game013.codeanalyzer.service.api;
+
+import com.game013.codeanalyzer.model.Submission;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+public interface ISubmissionSource {
+
+	void forEachPendingCppCode(String problemIndex, Function<Submission, CompletableFuture<?>> task);
+
+	/**
+	 * Runs the task of the pending submissions with an id greater than {@code fromId}, calling {@code pageCompleted}
+	 * with the last id of every page once the tasks of the whole page completed.
+	 */
+	void forEachPendingCppCode(String problemIndex, long fromId, Function<Submission, CompletableFuture<?>> task,
+			LongConsumer pageCompleted);
+
+	void forEachCppCode(Function<Submission, CompletableFuture<?>> task);
+
+	void forEachCppCode(long fromId, Function<Submission, CompletableFuture<?>> task, LongConsumer pageCompleted);
+
+	void forEachCompletedCode(Function<Submission, CompletableFuture<?>> task);
+}
@@ -0,0 +1,180 @@
+package com.game013.codeanalyzer.service.impl;
+
+import com.game013.codeanalyzer.cache.CacheDirectory;
+import com.game013.codeanalyzer.cache.CachedAnalysis;
+import com.game013.codeanalyzer.cache.ContentKey;
+import com.game013.codeanalyzer.config.ExecutorConfiguration;
+import com.game013.codeanalyzer.model.Metric;
+import com.game013.codeanalyzer.ngram.NgramSegmentStore;
+import com.game013.codeanalyzer.service.api.IAnalysisCache;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.file.Paths;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+/**
+ * Content addressed cache of analysis results, so submissions with the same source are pre-processed, lexed and
+ * parsed once. Results are kept in memory up to a number of bytes, evicting the least recently used ones, and when a
+ * directory is configured they are also saved there and found again by later runs.
+ */
+@Service
+@Slf4j
+public class AnalysisCache implements IAnalysisCache {
+
+	private final long maxBytes;
+
+	private final CacheDirectory directory;
+
+	private final Executor ioExecutor;
+
+	private final Map<ContentKey, CachedAnalysis> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+	private long bytes;
+
+	private final Statistics metrics = new Statistics();
+
+	private final Statistics nGrams = new Statistics();
+
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	public AnalysisCache(@Value("${program.cache.max-bytes}") long maxBytes,
+			@Value("${program.cache.directory}") String directory,
+			@Qualifier(ExecutorConfiguration.IO_EXECUTOR) Executor ioExecutor) {
+
+		this.maxBytes = maxBytes;
+		this.directory = StringUtils.isNotBlank(directory) ? new CacheDirectory(Paths.get(directory)) : null;
+		this.ioExecutor = ioExecutor;
+	}
+
+	@Override
+	public ContentKey key(String sourceCode) {
+
+		return maxBytes > 0 || directory != null ? ContentKey.of(sourceCode) : null;
+	}
+
+	@Override
+	public Metric findMetric(ContentKey key, long submissionId) {
+
+		CachedAnalysis entry = find(key, metrics, CachedAnalysis::hasMetric);
+		return entry != null ? entry.getMetric(submissionId) : null;
+	}
+
+	@Override
+	public NgramSegmentStore.Record findNgrams(ContentKey key) {
+
+		CachedAnalysis entry = find(key, nGrams, cached -> cached.getNgrams() != null);
+		return entry != null ? entry.getNgrams() : null;
+	}
+
+	@Override
+	public void putMetric(ContentKey key, Metric metric) {
+
+		put(key, new CachedAnalysis(metric, null));
+	}
+
+	@Override
+	public void putNgrams(ContentKey key, NgramSegmentStore.Record nGrams) {
+
+		put(key, new CachedAnalysis(null, nGrams));
+	}
+
+	@Override
+	public void logStatistics() {
+
+		if (maxBytes <= 0 && directory == null) {
+			return;
+		}
+		synchronized (this) {
+			log.info("Analysis cache: metrics {}, n-grams {}, {} entries in {} bytes, {} evicted", metrics.report(),
+					nGrams.report(), entries.size(), bytes, evictionCount.getAndSet(0));
+		}
+	}
+
+	private CachedAnalysis find(ContentKey key, Statistics statistics, Predicate<CachedAnalysis> hit) {
+
+		if (key == null) {
+			return null;
+		}
+		statistics.lookupCount.incrementAndGet();
+		CachedAnalysis entry;
+		synchronized (this) {
+			entry = entries.get(key);
+		}
+		if (entry != null && hit.test(entry)) {
+			statistics.memoryHitCount.incrementAndGet();
+			return entry;
+		}
+		if (directory != null) {
+			CachedAnalysis stored = directory.find(key);
+			if (stored != null && hit.test(stored)) {
+				statistics.diskHitCount.incrementAndGet();
+				cache(key, stored);
+				return stored;
+			}
+		}
+		return null;
+	}
+
+	private void put(ContentKey key, CachedAnalysis entry) {
+
+		if (key == null) {
+			return;
+		}
+		cache(key, entry);
+		if (directory != null) {
+			ioExecutor.execute(() -> directory.save(key, entry));
+		}
+	}
+
+	private synchronized void cache(ContentKey key, CachedAnalysis entry) {
+
+		if (maxBytes <= 0) {
+			return;
+		}
+		CachedAnalysis previous = entries.remove(key);
+		if (previous != null) {
+			bytes -= previous.weight();
+			entry = previous.merge(entry);
+		}
+		entries.put(key, entry);
+		bytes += entry.weight();
+		Iterator<CachedAnalysis> eldest = entries.values().iterator();
+		while (bytes > maxBytes && eldest.hasNext()) {
+			bytes -= eldest.next().weight();
+			eldest.remove();
+			evictionCount.incrementAndGet();
+		}
+	}
+
+	private static class Statistics {
+
+		private final AtomicLong lookupCount = new AtomicLong();
+
+		private final AtomicLong memoryHitCount = new AtomicLong();
+
+		private final AtomicLong diskHitCount = new AtomicLong();
+
+		/**
+		 * Hit rate since the previous report, resetting the counters.
+		 */
+		private String report() {
+
+			long lookups = lookupCount.getAndSet(0);
+			long memoryHits = memoryHitCount.getAndSet(0);
+			long diskHits = diskHitCount.getAndSet(0);
+			return String.format("%d/%d hits (%.1f%%, %d from disk)", memoryHits + diskHits, lookups,
+					lookups > 0 ? 100.0 * (memoryHits + diskHits) / lookups : 0.0, diskHits);
+		}
+
+	}
+
+}
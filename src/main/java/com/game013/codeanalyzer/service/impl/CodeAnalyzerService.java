@@ -1,34 +1,74 @@
 package com.game013.codeanalyzer.service.impl;
 
+import com.game013.codeanalyzer.cache.ContentKey;
+import com.game013.codeanalyzer.checkpoint.JobCheckpoint;
+import com.game013.codeanalyzer.config.ExecutorConfiguration;
+import com.game013.codeanalyzer.constant.CheckpointMode;
+import com.game013.codeanalyzer.constant.MetricField;
+import com.game013.codeanalyzer.constant.MetricStatus;
+import com.game013.codeanalyzer.constant.NgramCountMode;
+import com.game013.codeanalyzer.exception.MissingNgramVocabularyError;
+import com.game013.codeanalyzer.exception.ParseBudgetExceededError;
+import com.game013.codeanalyzer.export.ColumnType;
+import com.game013.codeanalyzer.export.ColumnarWriter;
 import com.game013.codeanalyzer.listener.CppListener;
-import com.game013.codeanalyzer.listener.ParsingErrorListener;
 import com.game013.codeanalyzer.model.Metric;
 import com.game013.codeanalyzer.model.NgramMeaning;
 import com.game013.codeanalyzer.model.Submission;
+import com.game013.codeanalyzer.ngram.FeatureIndex;
+import com.game013.codeanalyzer.ngram.HeavyHitterAccumulator;
+import com.game013.codeanalyzer.ngram.LongIntHashMap;
+import com.game013.codeanalyzer.ngram.NgramAccumulator;
+import com.game013.codeanalyzer.ngram.NgramCounts;
+import com.game013.codeanalyzer.ngram.NgramExtractor;
+import com.game013.codeanalyzer.ngram.NgramHistogramCodec;
+import com.game013.codeanalyzer.ngram.NgramKey;
+import com.game013.codeanalyzer.ngram.NgramSegmentStore;
+import com.game013.codeanalyzer.ngram.NgramSegmentWriter;
+import com.game013.codeanalyzer.ngram.NgramVocabulary;
+import com.game013.codeanalyzer.ngram.SpaceSaving;
+import com.game013.codeanalyzer.ngram.SparseFeatureVector;
+import com.game013.codeanalyzer.ngram.TopKComparison;
+import com.game013.codeanalyzer.pipeline.EntropyStage;
+import com.game013.codeanalyzer.pipeline.InvalidMetrics;
+import com.game013.codeanalyzer.pipeline.ParseBudget;
+import com.game013.codeanalyzer.pipeline.ParseStage;
+import com.game013.codeanalyzer.pipeline.SlowestSubmissions;
+import com.game013.codeanalyzer.pipeline.TokenBuffer;
+import com.game013.codeanalyzer.pipeline.TokenDistributionStage;
+import com.game013.codeanalyzer.pipeline.TokenStage;
 import com.game013.codeanalyzer.repository.MetricRepository;
 import com.game013.codeanalyzer.repository.NgramMeaningRepository;
-import com.game013.codeanalyzer.repository.SubmissionRepository;
+import com.game013.codeanalyzer.service.api.IAnalysisCache;
 import com.game013.codeanalyzer.service.api.ICodeAnalyzerService;
+import com.game013.codeanalyzer.service.api.IMetricSink;
+import com.game013.codeanalyzer.service.api.IPreProcessorService;
+import com.game013.codeanalyzer.service.api.ISubmissionSource;
 import com.game013.cppgrammar.CPP14Lexer;
-import com.game013.cppgrammar.CPP14Parser;
 import lombok.extern.slf4j.Slf4j;
 import org.antlr.v4.runtime.CharStreams;
-import org.antlr.v4.runtime.CommonTokenStream;
-import org.antlr.v4.runtime.Token;
 import org.antlr.v4.runtime.tree.ParseTree;
 import org.antlr.v4.runtime.tree.ParseTreeWalker;
-import org.apache.commons.io.FileUtils;
-import org.apache.commons.lang3.SerializationUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
 import java.io.IOException;
-import java.io.Serializable;
-import java.nio.charset.StandardCharsets;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntFunction;
+import java.util.function.LongConsumer;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -39,196 +79,273 @@ public class CodeAnalyzerService implements ICodeAnalyzerService {
 
 	private static final String NEW_N_GRAM_MEANING_ID = "48177c4e-f9f0-4fa8-835d-6a1b7f59ff50";
 
-	private static final int[] CPP_KEYWORDS_TOKENS = new int[]{
-			CPP14Parser.Alignas, CPP14Parser.Alignof, CPP14Parser.Asm, CPP14Parser.Auto, CPP14Parser.Bool,
-			CPP14Parser.Break, CPP14Parser.Case, CPP14Parser.Catch, CPP14Parser.Char, CPP14Parser.Char16, CPP14Parser.Char32, CPP14Parser.Class, CPP14Parser.Const,
-			CPP14Parser.Constexpr, CPP14Parser.Const_cast, CPP14Parser.Continue, CPP14Parser.Decltype, CPP14Parser.Default, CPP14Parser.Delete,
-			CPP14Parser.Do, CPP14Parser.Double, CPP14Parser.Dynamic_cast, CPP14Parser.Else, CPP14Parser.Enum, CPP14Parser.Explicit, CPP14Parser.Export,
-			CPP14Parser.Extern, CPP14Parser.False, CPP14Parser.Final, CPP14Parser.Float, CPP14Parser.For, CPP14Parser.Friend, CPP14Parser.Goto, CPP14Parser.If,
-			CPP14Parser.Inline, CPP14Parser.Int, CPP14Parser.Long, CPP14Parser.Mutable, CPP14Parser.Namespace, CPP14Parser.New, CPP14Parser.Noexcept,
-			CPP14Parser.Nullptr, CPP14Parser.Operator, CPP14Parser.Override, CPP14Parser.Private, CPP14Parser.Protected, CPP14Parser.Public,
-			CPP14Parser.Register, CPP14Parser.Reinterpret_cast, CPP14Parser.Return, CPP14Parser.Short, CPP14Parser.Signed, CPP14Parser.Sizeof,
-			CPP14Parser.Static, CPP14Parser.Static_assert, CPP14Parser.Static_cast, CPP14Parser.Struct, CPP14Parser.Switch, CPP14Parser.Template,
-			CPP14Parser.This, CPP14Parser.Thread_local, CPP14Parser.Throw, CPP14Parser.True, CPP14Parser.Try, CPP14Parser.Typedef, CPP14Parser.Typeid,
-			CPP14Parser.Typename, CPP14Parser.Union, CPP14Parser.Unsigned, CPP14Parser.Using, CPP14Parser.Virtual, CPP14Parser.Void, CPP14Parser.Volatile,
-			CPP14Parser.Wchar, CPP14Parser.While
-	};
-
-	private static final int[] CPP_OPERATORS_TOKENS = new int[] {
-			CPP14Parser.Plus, CPP14Parser.Minus, CPP14Parser.Star, CPP14Parser.Div, CPP14Parser.Mod,
-			CPP14Parser.Caret, CPP14Parser.And, CPP14Parser.Or, CPP14Parser.Tilde, CPP14Parser.Not, CPP14Parser.Assign, CPP14Parser.Less, CPP14Parser.Greater,
-			CPP14Parser.PlusAssign, CPP14Parser.MinusAssign, CPP14Parser.StarAssign, CPP14Parser.DivAssign, CPP14Parser.ModAssign,
-			CPP14Parser.XorAssign, CPP14Parser.AndAssign, CPP14Parser.OrAssign, CPP14Parser.LeftShift, CPP14Parser.LeftShiftAssign,
-			CPP14Parser.Equal, CPP14Parser.NotEqual, CPP14Parser.LessEqual, CPP14Parser.GreaterEqual, CPP14Parser.AndAnd,
-			CPP14Parser.OrOr, CPP14Parser.PlusPlus, CPP14Parser.MinusMinus, CPP14Parser.ArrowStar, CPP14Parser.Arrow,
-			CPP14Parser.Question, CPP14Parser.Colon, CPP14Parser.Doublecolon, CPP14Parser.Semi, CPP14Parser.Dot, CPP14Parser.Comma,
-			CPP14Parser.DotStar, CPP14Parser.Ellipsis, CPP14Parser.LeftParen, CPP14Parser.LeftBracket, CPP14Parser.LeftBrace
-	};
-
-	private static final Set<Integer> CPP_KEYWORDS_TOKENS_SET = new HashSet<>();
-
-	private static final Set<Integer> CPP_OPERATORS_TOKENS_SET = new HashSet<>();
-
-	static {
-		Arrays.stream(CPP_KEYWORDS_TOKENS).forEach(CPP_KEYWORDS_TOKENS_SET::add);
-		Arrays.stream(CPP_OPERATORS_TOKENS).forEach(CPP_OPERATORS_TOKENS_SET::add);
-	}
-
-	private final SubmissionRepository submissionRepository;
+	private static final String METRICS_JOB = "metrics";
+
+	private static final String NGRAMS_JOB = "ngrams";
+
+	private static final String METRICS_NGRAMS_JOB = "metrics-ngrams";
+
+	private static final TokenStage<Double> ENTROPY_STAGE = new EntropyStage();
+
+	private static final TokenStage<Pair<Double, Double>> KEYWORDS_STAGE = TokenDistributionStage.keywords();
+
+	private static final TokenStage<Pair<Double, Double>> OPERATORS_STAGE = TokenDistributionStage.operators();
+
+	private final ISubmissionSource submissionSource;
+
+	private final IPreProcessorService preProcessorService;
+
+	private final IAnalysisCache analysisCache;
 
 	private final MetricRepository metricRepository;
 
+	private final IMetricSink metricSink;
+
 	private final NgramMeaningRepository ngramMeaningRepository;
 
-	public CodeAnalyzerService(SubmissionRepository submissionRepository, MetricRepository metricRepository, NgramMeaningRepository ngramMeaningRepository) {
+	private final ParseStage parseStage;
 
-		this.submissionRepository = submissionRepository;
-		this.metricRepository = metricRepository;
-		this.ngramMeaningRepository = ngramMeaningRepository;
-	}
+	private final long parseBudgetMs;
 
-	@Override
-	public void analyzeCode() {
+	private final int parseBudgetTokens;
 
-		List<Submission> submissions = submissionRepository.findCppCode("D");
-		//List<Submission> submissions = submissionRepository.findAllById(Collections.singleton(10106668L));
-		log.info("Extracted [{}] snippets of code from submissionRepository", submissions.size());
+	private final SlowestSubmissions slowestSubmissions;
 
-		// Submission submission = submissions.get(index);
-		// Submission submission = submissionRepository.findById(submissionId).orElseThrow(() -> new RuntimeException(""));
+	private final InvalidMetrics invalidMetrics = new InvalidMetrics();
 
-		submissions.parallelStream().forEach(submission -> {
-			// 25258241, 13567180, 5942107, 18560298, 3159862, 2313985
-			// submission = submissionRepository.findById(2313985L).orElseThrow(() -> new RuntimeException(""));
-			Pair<String, Boolean> pair = getPreProcessedCode(submission.getSourceCode(), submission.getId());
-			String code = pair.getLeft();
-			//log.info("Code: \n{}", code);
-			log.info("Source code of submission [{}] and lang [{}]", submission.getId(), submission.getProgrammingLanguage());
-			Metric metric = Metric.builder().submissionId(submission.getId()).requirePreProcessing(pair.getRight())
-					.completed(false).build();
+	private final NgramExtractor ngramExtractor;
 
-			try {
-				CppListener listener = startAnalysis(submission.getId(), code);
+	private final int ngramTopK;
 
-				Metric newMetric = listener.getResult();
-				newMetric.setRequirePreProcessing(pair.getRight());
-				if (newMetric.isValid()) {
-					metric = newMetric;
-				}
+	private final NgramCountMode ngramCountMode;
 
-				log.debug("Result of source code analysis: {}", metric);
-				metricRepository.save(metric);
+	private final double heavyHittersEpsilon;
 
-			} catch (Exception e) {
-				log.error("Error processing source code", e);
-			}
-		});
-		log.info("Source code analysis finished !!");
-	}
+	private final Path ngramDirectory;
 
-	private Pair<String, Boolean> getPreProcessedCode(String initialCode, long submissionId) {
+	private final long ngramSegmentSize;
 
-		String code = initialCode;
-		Boolean requiresPreProcessing = false;
-		if (code.contains("#define")) {
-			requiresPreProcessing = true;
-			// Pre process
-			log.debug("File {} requires pre-processing", submissionId);
-			try {
-				File codeFile = FileUtils.getFile(String.format
-						("/Users/game013/Documents/Temporal/CodeAnalysis/pre_process/tmp_%s.cpp", submissionId));
-				FileUtils.write(codeFile, code, StandardCharsets.UTF_8);
-				File path = FileUtils.getFile("/Users/game013/Documents/Temporal/CodeAnalysis/pre_process/");
-
-				String[] cmd = {
-						"/bin/sh",
-						"-c",
-						String.format("gcc -E tmp_%s.cpp > out_%s.cpp", submissionId, submissionId)
-				};
-
-				Process p = Runtime.getRuntime().exec(cmd, null, path);
-				log.debug("Result of execution: {}", p.waitFor());
-
-				File outputFile = FileUtils.getFile
-						(String.format("/Users/game013/Documents/Temporal/CodeAnalysis/pre_process/out_%s.cpp",
-								submissionId));
-				List<String> lines = FileUtils.readLines(outputFile, StandardCharsets.UTF_8);
-
-				StringBuilder codeBuilder = new StringBuilder();
-				for (String line : lines) {
-					if (line.contains(String.format("\"tmp_%s.cpp\"", submissionId))) {
-						codeBuilder.setLength(0);
-						continue;
-					}
-					codeBuilder.append(line).append("\n");
-				}
-				code = codeBuilder.toString();
+	private final boolean denseNgramFeatures;
 
-				FileUtils.deleteQuietly(codeFile);
-				FileUtils.deleteQuietly(outputFile);
-				log.info("Pre-processing finished successfully");
-			} catch (IOException | InterruptedException e) {
-				log.error("Pre-processing finished with errors", e);
-			}
-		}
-		return Pair.of(code, requiresPreProcessing);
-	}
+	private final Path checkpointDirectory;
 
-	private CppListener startAnalysis(Long submissionId, String sourceCode) {
+	private final long checkpointIntervalMs;
 
-		CPP14Lexer lexer = new CPP14Lexer(CharStreams.fromString(sourceCode));
-		double entropy = getEntropy(sourceCode);
-		Pair<Double, Double> keywords = getKeywordDistribution(sourceCode);
-		Pair<Double, Double> operators = getOperators(sourceCode);
-		CommonTokenStream tokens = new CommonTokenStream(lexer);
-		CPP14Parser parser = new CPP14Parser(tokens);
-		parser.addErrorListener(new ParsingErrorListener());
+	private final CheckpointMode checkpointMode;
 
-		ParseTree tree = parser.translationunit();
-		ParseTreeWalker walker = new ParseTreeWalker();
+	private final Path exportDirectory;
 
-		CppListener listener = new CppListener(submissionId, countLines(sourceCode), maxLineLength(sourceCode),
-				entropy, keywords.getLeft(), keywords.getRight(), operators.getLeft(), operators.getRight());
-		walker.walk(listener, tree);
+	private final int exportPageSize;
 
-		return listener;
+	private final Executor cpuExecutor;
+
+	private final Executor ioExecutor;
+
+	public CodeAnalyzerService(ISubmissionSource submissionSource, IPreProcessorService preProcessorService,
+			IAnalysisCache analysisCache, MetricRepository metricRepository,
+			IMetricSink metricSink, NgramMeaningRepository ngramMeaningRepository,
+			@Value("${program.parser.two-stage}") boolean twoStageParsing,
+			@Value("${program.parser.budget.time-ms}") long parseBudgetMs,
+			@Value("${program.parser.budget.max-tokens}") int parseBudgetTokens,
+			@Value("${program.parser.slowest-report-size}") int slowestReportSize,
+			@Value("${program.ngram.min-n}") int ngramMinN, @Value("${program.ngram.max-n}") int ngramMaxN,
+			@Value("${program.ngram.top-k}") int ngramTopK,
+			@Value("${program.ngram.count-mode}") NgramCountMode ngramCountMode,
+			@Value("${program.ngram.heavy-hitters.epsilon}") double heavyHittersEpsilon,
+			@Value("${program.ngram.directory}") String ngramDirectory,
+			@Value("${program.ngram.segment-size}") long ngramSegmentSize,
+			@Value("${program.ngram.feature-vector.dense-columns}") boolean denseNgramFeatures,
+			@Value("${program.checkpoint.directory}") String checkpointDirectory,
+			@Value("${program.checkpoint.interval-ms}") long checkpointIntervalMs,
+			@Value("${program.checkpoint.mode}") CheckpointMode checkpointMode,
+			@Value("${program.export.directory}") String exportDirectory,
+			@Value("${program.export.page-size}") int exportPageSize,
+			@Qualifier(ExecutorConfiguration.CPU_EXECUTOR) Executor cpuExecutor,
+			@Qualifier(ExecutorConfiguration.IO_EXECUTOR) Executor ioExecutor) {
+
+		this.submissionSource = submissionSource;
+		this.preProcessorService = preProcessorService;
+		this.analysisCache = analysisCache;
+		this.metricRepository = metricRepository;
+		this.metricSink = metricSink;
+		this.ngramMeaningRepository = ngramMeaningRepository;
+		this.parseStage = new ParseStage(twoStageParsing);
+		this.parseBudgetMs = parseBudgetMs;
+		this.parseBudgetTokens = parseBudgetTokens;
+		this.slowestSubmissions = new SlowestSubmissions(slowestReportSize);
+		this.ngramExtractor = new NgramExtractor(ngramMinN, ngramMaxN);
+		this.ngramTopK = ngramTopK;
+		this.ngramCountMode = ngramCountMode;
+		this.heavyHittersEpsilon = heavyHittersEpsilon;
+		this.ngramDirectory = Paths.get(ngramDirectory);
+		this.ngramSegmentSize = ngramSegmentSize;
+		this.denseNgramFeatures = denseNgramFeatures;
+		this.checkpointDirectory = Paths.get(checkpointDirectory);
+		this.checkpointIntervalMs = checkpointIntervalMs;
+		this.checkpointMode = checkpointMode;
+		this.exportDirectory = Paths.get(exportDirectory);
+		this.exportPageSize = exportPageSize;
+		this.cpuExecutor = cpuExecutor;
+		this.ioExecutor = ioExecutor;
 	}
 
-	private double getEntropy(String sourceCode) {
+	@Override
+	public void analyzeCode() {
 
-		CPP14Lexer lexer = new CPP14Lexer(CharStreams.fromString(sourceCode));
-		List<? extends Token> tokens = lexer.getAllTokens();
-		Map<String, Double> tokenCount = new HashMap<>();
+		JobCheckpoint checkpoint = openCheckpoint(METRICS_JOB);
+		AtomicLong lastId = new AtomicLong(checkpoint.getLastId());
+		submissionSource.forEachPendingCppCode("D", checkpoint.getLastId(), submission -> {
+			ContentKey key = analysisCache.key(submission.getSourceCode());
+			return CompletableFuture.supplyAsync(() -> analysisCache.findMetric(key, submission.getId()), ioExecutor)
+					.thenCompose(cached -> cached != null ? CompletableFuture.completedFuture(cached) :
+							preProcessorService.preProcess(submission.getSourceCode(), submission.getId())
+									.thenApplyAsync(pair -> analyzeCode(submission, key, pair), cpuExecutor))
+					.thenAcceptAsync(metric -> {
+						if (metric != null) {
+							metricSink.accept(metric);
+						}
+					}, ioExecutor);
+		}, checkpoints(checkpoint, lastId, () -> -1L, () -> null));
+		saveCheckpoint(checkpoint, lastId.get(), -1L, true, () -> null);
+		analysisCache.logStatistics();
+		preProcessorService.logStatistics();
+		parseStage.logStatistics();
+		slowestSubmissions.logReport();
+		invalidMetrics.logReport();
+		log.info("Source code analysis finished !!");
+	}
 
-		for (Token token : tokens) {
-			tokenCount.merge(getTokensKey(token), 1.0, (oldValue, one) -> oldValue + one);
+	@Override
+	public void analyzeCodeAndNgrams() {
+
+		int minN = ngramExtractor.getMinN();
+		int maxN = ngramExtractor.getMaxN();
+		NgramAccumulator accumulator = ngramCountMode.isExact() ? new NgramAccumulator(minN, maxN) : null;
+		HeavyHitterAccumulator heavyHitters = ngramCountMode.isApproximate() ?
+				new HeavyHitterAccumulator(minN, maxN, heavyHittersEpsilon) : null;
+		JobCheckpoint checkpoint = openCheckpoint(METRICS_NGRAMS_JOB);
+		resumeNgrams(checkpoint, accumulator, heavyHitters);
+		AtomicLong lastId = new AtomicLong(checkpoint.getLastId());
+
+		// Single pass over the corpus: every submission is fetched, lexed and parsed once for both metrics and n-grams
+		try (NgramSegmentWriter writer = openNgramWriter(checkpoint)) {
+			submissionSource.forEachCppCode(checkpoint.getLastId(), submission -> {
+				ContentKey key = analysisCache.key(submission.getSourceCode());
+				return CompletableFuture.supplyAsync(() -> Pair.of(analysisCache.findMetric(key, submission.getId()),
+						analysisCache.findNgrams(key)), ioExecutor)
+						.thenCompose(cached -> (cached.getLeft() != null ?
+								CompletableFuture.<Pair<String, Boolean>>completedFuture(null) :
+								preProcessorService.preProcess(submission.getSourceCode(), submission.getId()))
+								.thenApplyAsync(pair -> {
+									if (pair == null) {
+										return Pair.of(cached.getLeft(), countNgrams(key, cached.getRight(),
+												() -> TokenBuffer.lex(submission.getSourceCode()), accumulator,
+												heavyHitters));
+									}
+									TokenBuffer tokens = TokenBuffer.lex(pair.getLeft());
+									Metric metric = analyzeCode(submission, pair.getRight(), tokens);
+									if (metric != null) {
+										analysisCache.putMetric(key, metric);
+									}
+									// N-grams are always extracted from the source as written, as the n-gram only
+									// run does
+									return Pair.of(metric, countNgrams(key, cached.getRight(), () -> pair.getRight() ?
+											TokenBuffer.lex(submission.getSourceCode()) : tokens, accumulator,
+											heavyHitters));
+								}, cpuExecutor))
+						.thenAcceptAsync(result -> {
+							if (result.getLeft() != null) {
+								metricSink.accept(result.getLeft());
+							}
+							writer.append(submission.getId(), result.getRight());
+						}, ioExecutor);
+			}, checkpoints(checkpoint, lastId, writer::checkpoint, () -> snapshotNgrams(accumulator, heavyHitters)));
+			NgramCounts globalNgrams = mergeGlobalNgrams(accumulator, heavyHitters);
+			saveCheckpoint(checkpoint, lastId.get(), writer.checkpoint(), true, () -> globalNgrams);
 		}
-
-		return calculateEntropy(tokenCount);
+		analysisCache.logStatistics();
+		preProcessorService.logStatistics();
+		parseStage.logStatistics();
+		slowestSubmissions.logReport();
+		invalidMetrics.logReport();
+
+		long[][] nGramsLists = new long[maxN + 1][];
+		FeatureIndex[] featureIndexes = featureIndexes(nGramsLists);
+		try (NgramSegmentStore store = NgramSegmentStore.open(ngramDirectory)) {
+			store.scan((submissionId, record) -> {
+				Metric metric = Metric.builder().submissionId(submissionId).build();
+				saveFeatureVectors(submissionId, setNgramFeatures(metric, record::histogram, featureIndexes));
+				if (denseNgramFeatures) {
+					metricSink.acceptNgramFeatures(metric);
+				}
+			});
+		}
+		metricSink.flush();
+		// The meaning row names the n-grams behind every feature column just written
+		saveNgramMeaning(nGramsLists);
+		log.info("Source code and n-gram analysis finished");
 	}
 
-	private Pair<Double, Double> getKeywordDistribution(String sourceCode) {
+	private Metric analyzeCode(Submission submission, ContentKey key, Pair<String, Boolean> pair) {
 
-		return extractFromTokens(sourceCode, CPP_KEYWORDS_TOKENS_SET);
+		Metric metric = analyzeCode(submission, pair.getRight(), TokenBuffer.lex(pair.getLeft()));
+		if (metric != null) {
+			analysisCache.putMetric(key, metric);
+		}
+		return metric;
 	}
 
-	private Pair<Double, Double> getOperators(String sourceCode) {
+	private Metric analyzeCode(Submission submission, boolean requirePreProcessing, TokenBuffer tokens) {
+
+		log.info("Source code of submission [{}] and lang [{}]", submission.getId(), submission.getProgrammingLanguage());
+		Metric metric = Metric.builder().submissionId(submission.getId()).requirePreProcessing(requirePreProcessing)
+				.completed(false).status(MetricStatus.INVALID).build();
+
+		long start = System.nanoTime();
+		try {
+			CppListener listener = startAnalysis(submission.getId(), tokens);
+
+			Metric newMetric = listener.getResult();
+			newMetric.setRequirePreProcessing(requirePreProcessing);
+			invalidMetrics.record(newMetric.getInvalidFields());
+			if (newMetric.getInvalidFields() == 0) {
+				metric = newMetric;
+			} else {
+				metric.setInvalidFields(newMetric.getInvalidFields());
+			}
 
-		return extractFromTokens(sourceCode, CPP_OPERATORS_TOKENS_SET);
+			log.debug("Result of source code analysis: {}", metric);
+			slowestSubmissions.record(submission.getId(), System.nanoTime() - start, metric.getStatus());
+			return metric;
+
+		} catch (ParseBudgetExceededError e) {
+			log.warn("Submission [{}] exceeded the parse budget: {}", submission.getId(), e.getMessage());
+			metric.setStatus(MetricStatus.BUDGET_EXCEEDED);
+			slowestSubmissions.record(submission.getId(), System.nanoTime() - start, metric.getStatus());
+			return metric;
+		} catch (Exception e) {
+			log.error("Error processing source code", e);
+		}
+		slowestSubmissions.record(submission.getId(), System.nanoTime() - start, null);
+		return null;
 	}
 
-	private Pair<Double, Double> extractFromTokens(String sourceCode, Set<Integer> set) {
+	private CppListener startAnalysis(Long submissionId, TokenBuffer tokens) {
 
-		CPP14Lexer lexer = new CPP14Lexer(CharStreams.fromString(sourceCode));
-		List<? extends Token> tokens = lexer.getAllTokens();
-		/*log.info("---------------------");
-		tokens.stream().filter(token -> set.contains(token.getType())).map(Token::getText).forEach(log::info);*/
+		String sourceCode = tokens.getSourceCode();
+		double entropy = ENTROPY_STAGE.apply(tokens);
+		Pair<Double, Double> keywords = KEYWORDS_STAGE.apply(tokens);
+		Pair<Double, Double> operators = OPERATORS_STAGE.apply(tokens);
+		ParseBudget budget = ParseBudget.start(tokens, parseBudgetMs, parseBudgetTokens);
+		ParseTree tree = parseStage.apply(tokens, budget);
+		ParseTreeWalker walker = budget.walker();
+
+		CppListener listener = new CppListener(submissionId, countLines(sourceCode), maxLineLength(sourceCode),
+				entropy, keywords.getLeft(), keywords.getRight(), operators.getLeft(), operators.getRight(),
+				tokens);
+		walker.walk(listener, tree);
 
-		long distinct = tokens.stream().filter(token -> set.contains(token.getType())).map(Token::getText)
-				.collect(Collectors.toSet()).size();
-		long totalCount = tokens.stream().mapToInt(Token::getType).filter(set::contains)
-				.count();
-		return Pair.of((double) totalCount, (double) distinct);
+		return listener;
 	}
 
 	private int countLines(String str) {
@@ -246,21 +363,30 @@ public class CodeAnalyzerService implements ICodeAnalyzerService {
 		return max;
 	}
 
-	private ConcurrentHashMap<String, Integer> biGrams = new ConcurrentHashMap<>();
-	private ConcurrentHashMap<String, Integer> triGrams = new ConcurrentHashMap<>();
-	private ConcurrentHashMap<String, Integer> fourGrams = new ConcurrentHashMap<>();
-	private ConcurrentHashMap<String, Integer> fiveGrams = new ConcurrentHashMap<>();
-
 	@Override
 	public void analyzeTokensNgrams() {
 
-		List<Submission> submissions = submissionRepository.findCppCode();
-
-		submissions.parallelStream().forEach(submission -> analyzeTokensNgrams(submission.getId(), submission.getSourceCode()));
-		saveNgram(0L, "global_bigram", this.biGrams);
-		saveNgram(0L, "global_trigram", this.triGrams);
-		saveNgram(0L, "global_fourgram", this.fourGrams);
-		saveNgram(0L, "global_fivegram", this.fiveGrams);
+		int minN = ngramExtractor.getMinN();
+		int maxN = ngramExtractor.getMaxN();
+		NgramAccumulator accumulator = ngramCountMode.isExact() ? new NgramAccumulator(minN, maxN) : null;
+		HeavyHitterAccumulator heavyHitters = ngramCountMode.isApproximate() ?
+				new HeavyHitterAccumulator(minN, maxN, heavyHittersEpsilon) : null;
+		JobCheckpoint checkpoint = openCheckpoint(NGRAMS_JOB);
+		resumeNgrams(checkpoint, accumulator, heavyHitters);
+		AtomicLong lastId = new AtomicLong(checkpoint.getLastId());
+
+		try (NgramSegmentWriter writer = openNgramWriter(checkpoint)) {
+			submissionSource.forEachCppCode(checkpoint.getLastId(), submission -> {
+				ContentKey key = analysisCache.key(submission.getSourceCode());
+				return CompletableFuture.supplyAsync(() -> analysisCache.findNgrams(key), ioExecutor)
+						.thenApplyAsync(cached -> countNgrams(key, cached,
+								() -> TokenBuffer.lex(submission.getSourceCode()), accumulator, heavyHitters), cpuExecutor)
+						.thenAcceptAsync(nGrams -> writer.append(submission.getId(), nGrams), ioExecutor);
+			}, checkpoints(checkpoint, lastId, writer::checkpoint, () -> snapshotNgrams(accumulator, heavyHitters)));
+			NgramCounts globalNgrams = mergeGlobalNgrams(accumulator, heavyHitters);
+			saveCheckpoint(checkpoint, lastId.get(), writer.checkpoint(), true, () -> globalNgrams);
+		}
+		analysisCache.logStatistics();
 		log.info("Token analysing process finished");
 	}
 
@@ -268,39 +394,95 @@ public class CodeAnalyzerService implements ICodeAnalyzerService {
 	public void extractNgrams() {
 
 		log.info("Starting extraction of nGrams");
-		List<String> biGramsList = getNgrams("global_bigram");
-		List<String> triGramsList = getNgrams("global_trigram");
-		List<String> fourGramsList = getNgrams("global_fourgram");
-		List<String> fiveGramsList = getNgrams("global_fivegram");
-		// TODO: Undo
-		// List<Submission> submissions = submissionRepository.findCompletedCode();
-		List<Submission> submissions = submissionRepository.findAllById(Collections.singleton(7706780L));
-
-		submissions.parallelStream().forEach(submission -> {
-			String bi = extractNGramFeatures(submission.getId(), "bigram", biGramsList);
-			String tri = extractNGramFeatures(submission.getId(), "trigram", triGramsList);
-			String four = extractNGramFeatures(submission.getId(), "fourgram", fourGramsList);
-			String five = extractNGramFeatures(submission.getId(), "fivegram", fiveGramsList);
-
-			log.info("Saving metrics for submission [{}]", submission.getId());
-			Metric metric = metricRepository.findById(submission.getId())
-					.orElse(Metric.builder().submissionId(submission.getId()).completed(false).build());
-			if (!metric.getCompleted()) {
-				log.warn("Submission {} was not found !!! *************", submission.getId());
-				return;
-			}
-			metric.setBiGram(bi);
-			metric.setTriGram(tri);
-			metric.setQuadriGram(four);
-			metric.setQuinqueGram(five);
-			// TODO: Delete comment
-			// metricRepository.save(metric);
-		});
-		// TODO: Delete comment
-		// saveNgramMeaning(biGramsList, triGramsList, fourGramsList, fiveGramsList);
+		long[][] nGramsLists = new long[ngramExtractor.getMaxN() + 1][];
+		FeatureIndex[] featureIndexes = featureIndexes(nGramsLists);
+
+		try (NgramSegmentStore store = NgramSegmentStore.open(ngramDirectory)) {
+			submissionSource.forEachCompletedCode(submission -> CompletableFuture
+					.supplyAsync(() -> metricRepository.findById(submission.getId()), ioExecutor)
+					.thenApplyAsync(found -> {
+						Metric metric = found.orElse(Metric.builder().submissionId(submission.getId()).completed(false)
+								.build());
+						if (!metric.getCompleted()) {
+							log.warn("Submission {} was not found !!! *************", submission.getId());
+							return null;
+						}
+						log.info("Saving metrics for submission [{}]", submission.getId());
+						return Pair.of(metric, setNgramFeatures(metric, n -> store.find(submission.getId(), n),
+								featureIndexes));
+					}, cpuExecutor)
+					.thenAcceptAsync(result -> {
+						if (result != null) {
+							// Only the n-gram columns are updated, the rest of the row stays as the analysis wrote it
+							saveFeatureVectors(submission.getId(), result.getRight());
+							if (denseNgramFeatures) {
+								metricSink.acceptNgramFeatures(result.getLeft());
+							}
+						}
+					}, ioExecutor));
+			metricSink.flush();
+		}
+		// The meaning row names the n-grams behind every feature column just written
+		saveNgramMeaning(nGramsLists);
 		log.info("NGram extraction process finished");
 	}
 
+	@Override
+	public void exportCorpus() {
+
+		log.info("Exporting corpus to {}", exportDirectory);
+		long[][] nGramsLists = new long[ngramExtractor.getMaxN() + 1][];
+		FeatureIndex[] featureIndexes = featureIndexes(nGramsLists);
+
+		LinkedHashMap<String, ColumnType> columns = new LinkedHashMap<>();
+		columns.put("submission_id", ColumnType.LONG);
+		columns.put("status", ColumnType.INT);
+		columns.put("require_pre_processing", ColumnType.INT);
+		columns.put("invalid_fields", ColumnType.INT);
+		for (MetricField field : MetricField.values()) {
+			columns.put(field.name().toLowerCase(), ColumnType.DOUBLE);
+		}
+		for (int n = ngramExtractor.getMinN(); n <= ngramExtractor.getMaxN(); ++n) {
+			for (int i = 0; i < featureIndexes[n].size(); ++i) {
+				columns.put(NgramCounts.orderName(n) + "_" + i, ColumnType.INT);
+			}
+		}
+
+		// Metrics are read by pages in submission id order and their vectors looked up in the segment store, so no
+		// more than a page is held in memory
+		try (NgramSegmentStore store = NgramSegmentStore.open(ngramDirectory);
+				ColumnarWriter writer = new ColumnarWriter(exportDirectory, columns)) {
+			writer.dictionary("status", Arrays.stream(MetricStatus.values()).map(Enum::name)
+					.collect(Collectors.toList()));
+			long lastId = -1L;
+			List<Metric> page;
+			do {
+				page = metricRepository.findPage(lastId, PageRequest.of(0, exportPageSize));
+				for (Metric metric : page) {
+					// Rows saved before the status was recorded have none
+					writer.putLong(metric.getSubmissionId())
+							.putInt(metric.getStatus() != null ? metric.getStatus().ordinal() : -1)
+							.putInt(Boolean.TRUE.equals(metric.getRequirePreProcessing()) ? 1 : 0)
+							.putInt(metric.getInvalidFields() != null ? metric.getInvalidFields() : -1);
+					for (MetricField field : MetricField.values()) {
+						Double value = field.get(metric);
+						writer.putDouble(value != null ? value : Double.NaN);
+					}
+					for (int n = ngramExtractor.getMinN(); n <= ngramExtractor.getMaxN(); ++n) {
+						for (int feature : extractNGramFeatures(store.find(metric.getSubmissionId(), n),
+								featureIndexes[n])) {
+							writer.putInt(feature);
+						}
+					}
+					writer.endRow();
+					lastId = metric.getSubmissionId();
+				}
+			} while (page.size() == exportPageSize);
+			writer.finish();
+			log.info("Exported {} submissions with {} columns", writer.getRows(), columns.size());
+		}
+	}
+
 	@Override
 	public void ngramMeanings() {
 
@@ -339,146 +521,281 @@ public class CodeAnalyzerService implements ICodeAnalyzerService {
 		return literal;
 	}
 
-	private void saveNgramMeaning(List<String> biGramsList, List<String> triGramsList, List<String> fourGramsList, List<String> fiveGramsList) {
+	private void saveNgramMeaning(long[][] nGramsLists) {
 
-		String biGram = StringUtils.join(biGramsList, ";s;");
-		String triGram = StringUtils.join(triGramsList, ";s;");
-		String fourGram = StringUtils.join(fourGramsList, ";s;");
-		String fiveGram = StringUtils.join(fiveGramsList, ";s;");
+		String[] meanings = new String[nGramsLists.length];
+		for (int n = 0; n < nGramsLists.length; ++n) {
+			if (nGramsLists[n] != null) {
+				meanings[n] = renderNgrams(nGramsLists[n]);
+			}
+		}
+		String biGram = getOrNull(meanings, 2);
+		String triGram = getOrNull(meanings, 3);
+		String fourGram = getOrNull(meanings, 4);
+		String fiveGram = getOrNull(meanings, 5);
 		NgramMeaning ngramMeaning = NgramMeaning.builder().id(N_GRAM_MEANING_ID).biGram(biGram).triGram(triGram).fourGram
 				(fourGram).fiveGram(fiveGram).build();
 		System.out.println(ngramMeaning);
 		ngramMeaningRepository.save(ngramMeaning);
 	}
 
-	private String extractNGramFeatures(Long submissionId, String nGramType, List<String> nGramList) {
+	/**
+	 * Checkpoint of a job, which is empty unless the job resumes from it.
+	 */
+	private JobCheckpoint openCheckpoint(String job) {
 
-		HashMap<String, Integer> biGrams = loadNgram(submissionId, nGramType);
-		// TODO: Delete logging
-		log.info("Extracted nGram type: {}\nValue:", nGramType, biGrams);
-		int[] features = new int[nGramList.size()];
-		int i = -1;
-		for (String nGram : nGramList) {
-			features[++i] = biGrams.getOrDefault(nGram, 0);
+		JobCheckpoint checkpoint = JobCheckpoint.load(checkpointDirectory.resolve(job), checkpointIntervalMs);
+		if (checkpoint.exists() && checkpointMode.resumes(checkpoint.isCompleted())) {
+			log.info("Resuming [{}] after submission [{}]", job, checkpoint.getLastId());
+		} else {
+			checkpoint.clear();
 		}
-		return StringUtils.join(features, ',');
+		return checkpoint;
 	}
 
-	private List<String> getNgrams(String nGramType) {
+	/**
+	 * Starts the global n-gram counts from those of the checkpoint, or clears the checkpoint when it has none for the
+	 * current orders.
+	 */
+	private void resumeNgrams(JobCheckpoint checkpoint, NgramAccumulator accumulator,
+			HeavyHitterAccumulator heavyHitters) {
 
-		String fileName = String.format("/Users/game013/Documents/Temporal/CodeAnalysis/pre_process/%s_%d.txt",
-				nGramType, 0L);
-		try {
-			byte[] content = FileUtils.readFileToByteArray(FileUtils.getFile(fileName));
-			ConcurrentHashMap<String, Integer> nGrams = SerializationUtils.deserialize(content);
-
-			List<Map.Entry<String, Integer>> entries = new ArrayList<>(nGrams.entrySet());
-			entries.sort(Map.Entry.comparingByValue());
-			int size = entries.size();
-			// TODO: Delete logging
-			log.info("After sorting ...\nType: {}\nValue: {}", nGramType, entries.subList(size - 100, size));
-			List<Map.Entry<String, Integer>> newList = entries.subList(size - 100, size);
-			return newList.stream().map(Map.Entry::getKey).collect(Collectors.toList());
-		} catch (IOException ioe) {
-			ioe.printStackTrace();
+		if (!checkpoint.exists()) {
+			return;
+		}
+		NgramCounts counts = checkpoint.loadCounts(ngramExtractor.getMinN(), ngramExtractor.getMaxN());
+		if (counts == null || checkpoint.getSegmentLocation() < 0) {
+			log.warn("Checkpoint after submission [{}] does not match the n-gram settings, starting over",
+					checkpoint.getLastId());
+			checkpoint.clear();
+			return;
+		}
+		if (heavyHitters != null) {
+			heavyHitters.seed(counts);
+		}
+		if (accumulator != null) {
+			accumulator.seed(counts);
 		}
-		return Collections.emptyList();
 	}
 
-	private void analyzeTokensNgrams(Long submissionId, String sourceCode) {
-
-		log.info("****** Analyzing token n-grams");
-		CPP14Lexer lexer = new CPP14Lexer(CharStreams.fromString(sourceCode));
+	private NgramSegmentWriter openNgramWriter(JobCheckpoint checkpoint) {
 
-		HashMap<String, Integer> biGrams = new HashMap<>();
-		HashMap<String, Integer> triGrams = new HashMap<>();
-		HashMap<String, Integer> fourGrams = new HashMap<>();
-		HashMap<String, Integer> fiveGrams = new HashMap<>();
+		return checkpoint.exists() ?
+				NgramSegmentWriter.resume(ngramDirectory, ngramSegmentSize, checkpoint.getSegmentLocation()) :
+				new NgramSegmentWriter(ngramDirectory, ngramSegmentSize, false);
+	}
 
-		List<? extends Token> tokens = lexer.getAllTokens();
-		for (int i = 0; i < tokens.size(); ++i) {
-			if (i + 1 < tokens.size()) {
-				String key = getTokensKey(tokens.get(i), tokens.get(i + 1));
-				biGrams.merge(key, 1, (v, n) -> v + n);
+	/**
+	 * Page listener that keeps the last processed id and saves a checkpoint whenever one is due, once the buffered
+	 * metrics are written.
+	 */
+	private LongConsumer checkpoints(JobCheckpoint checkpoint, AtomicLong lastId, LongSupplier segmentLocation,
+			Supplier<NgramCounts> counts) {
+
+		return pageLastId -> {
+			lastId.set(pageLastId);
+			if (checkpoint.isDue()) {
+				saveCheckpoint(checkpoint, pageLastId, segmentLocation.getAsLong(), false, counts);
 			}
-			if (i + 2 < tokens.size()) {
-				String key = getTokensKey(tokens.get(i), tokens.get(i + 1), tokens.get(i + 2));
-				triGrams.merge(key, 1, (v, n) -> v + n);
+		};
+	}
+
+	/**
+	 * Saves a checkpoint once every metric row accepted so far is written. After a row failed, the job keeps its last
+	 * checkpoint from before the failure, as resuming past it would skip that submission for good.
+	 */
+	private void saveCheckpoint(JobCheckpoint checkpoint, long lastId, long segmentLocation, boolean completed,
+			Supplier<NgramCounts> counts) {
+
+		metricSink.flush();
+		SortedSet<Long> failed = metricSink.getFailedSubmissions();
+		if (!failed.isEmpty()) {
+			log.error("Not saving checkpoint at submission [{}]: {} submissions could not be saved, the first is [{}]",
+					lastId, failed.size(), failed.first());
+			return;
+		}
+		checkpoint.save(lastId, segmentLocation, completed, counts.get());
+	}
+
+	private NgramCounts snapshotNgrams(NgramAccumulator accumulator, HeavyHitterAccumulator heavyHitters) {
+
+		return accumulator != null ? accumulator.snapshot() : heavyHitters.snapshot();
+	}
+
+	/**
+	 * Merges the global n-gram counts of a run, reporting the differences of both modes when both are computed, and
+	 * saves them with the vocabulary selected from them.
+	 */
+	private NgramCounts mergeGlobalNgrams(NgramAccumulator accumulator, HeavyHitterAccumulator heavyHitters) {
+
+		int minN = ngramExtractor.getMinN();
+		int maxN = ngramExtractor.getMaxN();
+		NgramCounts globalNgrams = accumulator != null ? accumulator.merge() : null;
+		if (heavyHitters != null) {
+			SpaceSaving[] summaries = heavyHitters.merge();
+			if (globalNgrams != null) {
+				for (int n = minN; n <= maxN; ++n) {
+					TopKComparison.report(NgramCounts.orderName(n), ngramTopK, globalNgrams.get(n), summaries[n]);
+				}
+			} else {
+				globalNgrams = heavyHitters.toCounts(summaries);
 			}
-			if (i + 3 < tokens.size()) {
-				String key = getTokensKey(tokens.get(i), tokens.get(i + 1), tokens.get(i + 2), tokens.get(i + 3));
-				fourGrams.merge(key, 1, (v, n) -> v + n);
+		}
+		for (int n = minN; n <= maxN; ++n) {
+			saveGlobalNgram(n, globalNgrams.get(n));
+			saveVocabulary(NgramVocabulary.select(n, globalNgrams.get(n), ngramTopK));
+		}
+		return globalNgrams;
+	}
+
+	/**
+	 * Loads the vocabulary of every order into the given lists and builds their feature indexes.
+	 */
+	private FeatureIndex[] featureIndexes(long[][] nGramsLists) {
+
+		FeatureIndex[] featureIndexes = new FeatureIndex[nGramsLists.length];
+		for (int n = ngramExtractor.getMinN(); n <= ngramExtractor.getMaxN(); ++n) {
+			NgramVocabulary vocabulary = loadVocabulary(n);
+			nGramsLists[n] = vocabulary.getKeys();
+			featureIndexes[n] = vocabulary.index();
+			if (n < 2 || n > 5) {
+				log.warn("There is no metric column for {} features, they will not be saved", NgramCounts.orderName(n));
 			}
-			if (i + 4 < tokens.size()) {
-				String key = getTokensKey(tokens.get(i), tokens.get(i + 1), tokens.get(i + 2), tokens.get(i + 3),
-						tokens.get(i + 4));
-				fiveGrams.merge(key, 1, (v, n) -> v + n);
+		}
+		return featureIndexes;
+	}
+
+	/**
+	 * Computes the feature vectors of a submission, indexed by order, and sets the dense feature columns of its metric
+	 * when they are enabled.
+	 */
+	private SparseFeatureVector[] setNgramFeatures(Metric metric, IntFunction<ByteBuffer> histograms,
+			FeatureIndex[] featureIndexes) {
+
+		String[] features = new String[featureIndexes.length];
+		SparseFeatureVector[] vectors = new SparseFeatureVector[featureIndexes.length];
+		for (int n = ngramExtractor.getMinN(); n <= ngramExtractor.getMaxN(); ++n) {
+			int[] vector = extractNGramFeatures(histograms.apply(n), featureIndexes[n]);
+			vectors[n] = SparseFeatureVector.of(vector);
+			if (denseNgramFeatures) {
+				features[n] = StringUtils.join(vector, ',');
 			}
+		}
+		metric.setBiGram(getOrNull(features, 2));
+		metric.setTriGram(getOrNull(features, 3));
+		metric.setQuadriGram(getOrNull(features, 4));
+		metric.setQuinqueGram(getOrNull(features, 5));
+		return vectors;
+	}
 
+	private void saveFeatureVectors(long submissionId, SparseFeatureVector[] vectors) {
+
+		for (int n = ngramExtractor.getMinN(); n <= ngramExtractor.getMaxN(); ++n) {
+			metricSink.acceptFeatureVector(submissionId, n, vectors[n]);
 		}
-		mergeMap(this.biGrams, biGrams);
-		mergeMap(this.triGrams, triGrams);
-		mergeMap(this.fourGrams, fourGrams);
-		mergeMap(this.fiveGrams, fiveGrams);
+	}
 
-		saveNgram(submissionId, "bigram", biGrams);
-		saveNgram(submissionId, "trigram", triGrams);
-		saveNgram(submissionId, "fourgram", fourGrams);
-		saveNgram(submissionId, "fivegram", fiveGrams);
+	private String getOrNull(String[] values, int index) {
+
+		return index < values.length ? values[index] : null;
 	}
 
-	private double calculateEntropy(Map<String, Double> tokenCount) {
+	private String renderNgrams(long[] nGrams) {
 
-		double entropy = 0;
-		double totalCount = tokenCount.values().stream().mapToDouble(Double::doubleValue).sum();
-		for (Map.Entry<String, Double> token : tokenCount.entrySet()) {
-			double p = token.getValue() / totalCount;
-			entropy -= p * log2(p);
-		}
-		return entropy;
+		return Arrays.stream(nGrams).mapToObj(NgramKey::render).collect(Collectors.joining(";s;"));
 	}
 
-	private double log2(double a) {
-		return Math.log(a) / Math.log(2);
+	private int[] extractNGramFeatures(ByteBuffer nGrams, FeatureIndex featureIndex) {
+
+		return nGrams != null ? featureIndex.features(nGrams) : new int[featureIndex.size()];
+	}
+
+	/**
+	 * Vocabulary of an order, selected again from the global counts only when it was saved for another top-K.
+	 */
+	private NgramVocabulary loadVocabulary(int n) {
+
+		Path file = vocabularyFile(n);
+		if (Files.exists(file)) {
+			try {
+				NgramVocabulary vocabulary = NgramVocabulary.read(file);
+				if (vocabulary.getOrder() == n && vocabulary.getRequested() == ngramTopK) {
+					return vocabulary;
+				}
+			} catch (IOException ioe) {
+				log.error("Error loading {} vocabulary", NgramCounts.orderName(n), ioe);
+			}
+		}
+		LongIntHashMap nGrams = loadGlobalNgram(n);
+		if (nGrams == null) {
+			// Every feature would be zero, so the global counts must be built first
+			throw new MissingNgramVocabularyError(String.format("Neither the %s vocabulary nor the global counts " +
+					"could be loaded from %s", NgramCounts.orderName(n), ngramDirectory));
+		}
+		NgramVocabulary vocabulary = NgramVocabulary.select(n, nGrams, ngramTopK);
+		saveVocabulary(vocabulary);
+		return vocabulary;
 	}
 
-	private void saveNgram(Long submissionId, String nGramType, Serializable nGram) {
+	private void saveVocabulary(NgramVocabulary vocabulary) {
 
-		String fileName = String.format("/Users/game013/Documents/Temporal/CodeAnalysis/pre_process/%s_%d.txt",
-				nGramType, submissionId);
 		try {
-			FileUtils.writeByteArrayToFile(FileUtils.getFile(fileName), SerializationUtils.serialize(nGram));
+			vocabulary.write(vocabularyFile(vocabulary.getOrder()));
 		} catch (IOException ioe) {
-			ioe.printStackTrace();
+			log.error("Error saving {} vocabulary", NgramCounts.orderName(vocabulary.getOrder()), ioe);
+		}
+	}
+
+	/**
+	 * Adds the n-grams of a source to the global counts, extracting them from its tokens unless they were cached, and
+	 * returns them encoded.
+	 */
+	private NgramSegmentStore.Record countNgrams(ContentKey key, NgramSegmentStore.Record cached,
+			Supplier<TokenBuffer> tokens, NgramAccumulator accumulator, HeavyHitterAccumulator heavyHitters) {
+
+		NgramCounts nGrams = cached != null ? cached.counts() : ngramExtractor.extract(tokens.get().getTypes());
+		if (accumulator != null) {
+			accumulator.add(nGrams);
+		}
+		if (heavyHitters != null) {
+			heavyHitters.add(nGrams);
+		}
+		if (cached != null) {
+			return cached;
 		}
+		NgramSegmentStore.Record record = NgramSegmentStore.Record.of(nGrams);
+		analysisCache.putNgrams(key, record);
+		return record;
 	}
 
-	private HashMap<String, Integer> loadNgram(Long submissionId, String nGramType) {
+	private void saveGlobalNgram(int n, LongIntHashMap nGram) {
 
-		String fileName = String.format("/Users/game013/Documents/Temporal/CodeAnalysis/pre_process/%s_%d.txt",
-				nGramType, submissionId);
+		ByteBuffer content = NgramHistogramCodec.encode(n, nGram);
 		try {
-			byte[] content = FileUtils.readFileToByteArray(FileUtils.getFile(fileName));
-			return SerializationUtils.deserialize(content);
+			Files.write(globalNgramFile(n), Arrays.copyOf(content.array(), content.limit()));
 		} catch (IOException ioe) {
-			ioe.printStackTrace();
+			log.error("Error saving global {} counts", NgramCounts.orderName(n), ioe);
 		}
-		return new HashMap<>();
 	}
 
-	private String getTokensKey(Token... tokens) {
+	private LongIntHashMap loadGlobalNgram(int n) {
 
-		String[] key = new String[tokens.length];
-		for (int i = 0; i < tokens.length; ++i) {
-			key[i] = String.valueOf(tokens[i].getType());
+		try {
+			return NgramHistogramCodec.decode(ByteBuffer.wrap(Files.readAllBytes(globalNgramFile(n))));
+		} catch (IOException ioe) {
+			log.error("Error loading global {} counts", NgramCounts.orderName(n), ioe);
 		}
-		return StringUtils.join(key, '|');
+		return null;
 	}
 
-	private void mergeMap(ConcurrentHashMap<String, Integer> destination, Map<String, Integer> source) {
-		for(Map.Entry<String, Integer> entry : source.entrySet()) {
-			destination.merge(entry.getKey(), entry.getValue(), (a, b) -> a + b);
-		}
+	private Path globalNgramFile(int n) {
+
+		return ngramDirectory.resolve(String.format("global_%s.ngh", NgramCounts.orderName(n)));
+	}
+
+	private Path vocabularyFile(int n) {
+
+		return ngramDirectory.resolve(String.format("vocabulary_%s.ngv", NgramCounts.orderName(n)));
 	}
 
 }
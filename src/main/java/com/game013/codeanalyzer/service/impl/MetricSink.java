@@ -0,0 +1,324 @@
+package com.game013.codeanalyzer.service.impl;
+
+import com.game013.codeanalyzer.model.Metric;
+import com.game013.codeanalyzer.ngram.SparseFeatureVector;
+import com.game013.codeanalyzer.service.api.IMetricSink;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.SortedSet;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Buffers {@link Metric} rows and writes them with JDBC batch upserts, bypassing the JPA persistence context. A batch
+ * is written as soon as it is full, and whatever is buffered is written periodically and when the application shuts
+ * down. Updates of the n-gram features alone and sparse feature vectors are buffered apart and written after the
+ * upserts.
+ */
+@Service
+@Slf4j
+public class MetricSink implements IMetricSink {
+
+	/**
+	 * Columns of the metric table. The status was added with {@code ALTER TABLE metric ADD COLUMN status VARCHAR},
+	 * null in the rows saved before it, and the bitmask of invalid fields with
+	 * {@code ALTER TABLE metric ADD COLUMN invalid_fields INTEGER}.
+	 */
+	private static final List<Column<Metric>> COLUMNS = Arrays.asList(
+			new Column<>("submission_id", Types.BIGINT, Metric::getSubmissionId),
+			new Column<>("completed", Types.BOOLEAN, Metric::getCompleted),
+			new Column<>("status", Types.VARCHAR, metric -> Objects.toString(metric.getStatus(), null)),
+			new Column<>("require_pre_processing", Types.BOOLEAN, Metric::getRequirePreProcessing),
+			new Column<>("invalid_fields", Types.INTEGER, Metric::getInvalidFields),
+			new Column<>("ast_node_count", Types.DOUBLE, Metric::getAstNodeCount),
+			new Column<>("avg_function_length", Types.DOUBLE, Metric::getAvgFunctionLength),
+			new Column<>("avg_function_parameter_count", Types.DOUBLE, Metric::getAvgFunctionParameterCount),
+			new Column<>("avg_identifier_count", Types.DOUBLE, Metric::getAvgIdentifierCount),
+			new Column<>("avg_identifier_length", Types.DOUBLE, Metric::getAvgIdentifierLength),
+			new Column<>("avg_line_length", Types.DOUBLE, Metric::getAvgLineLength),
+			new Column<>("avg_period_count", Types.DOUBLE, Metric::getAvgPeriodCount),
+			new Column<>("avg_parenthesis_count", Types.DOUBLE, Metric::getAvgParenthesisCount),
+			new Column<>("branch_factor", Types.DOUBLE, Metric::getBranchFactor),
+			new Column<>("cyclomatic_complexity", Types.DOUBLE, Metric::getCyclomaticComplexity),
+			new Column<>("entropy", Types.DOUBLE, Metric::getEntropy),
+			new Column<>("halstead_difficulty", Types.DOUBLE, Metric::getHalsteadDifficulty),
+			new Column<>("halstead_effort", Types.DOUBLE, Metric::getHalsteadEffort),
+			new Column<>("halstead_volume", Types.DOUBLE, Metric::getHalsteadVolume),
+			new Column<>("keyword_distribution", Types.DOUBLE, Metric::getKeywordDistribution),
+			new Column<>("lines_of_code", Types.DOUBLE, Metric::getLinesOfCode),
+			new Column<>("ln_keyword_file_length", Types.DOUBLE, Metric::getLnKeywordFileLength),
+			new Column<>("ln_literal_count_file_length", Types.DOUBLE, Metric::getLnLiteralCountFileLength),
+			new Column<>("max_depth_nested_blocks", Types.DOUBLE, Metric::getMaxDepthNestedBlocks),
+			new Column<>("max_identifier_count", Types.DOUBLE, Metric::getMaxIdentifierCount),
+			new Column<>("max_identifier_length", Types.DOUBLE, Metric::getMaxIdentifierLength),
+			new Column<>("max_line_length", Types.DOUBLE, Metric::getMaxLineLength),
+			new Column<>("posnett_readability_metric", Types.DOUBLE, Metric::getPosnettReadabilityMetric),
+			new Column<>("bi_gram", Types.VARCHAR, Metric::getBiGram),
+			new Column<>("tri_gram", Types.VARCHAR, Metric::getTriGram),
+			new Column<>("quadri_gram", Types.VARCHAR, Metric::getQuadriGram),
+			new Column<>("quinque_gram", Types.VARCHAR, Metric::getQuinqueGram)
+	);
+
+	private static final String UPSERT_SQL = String.format("INSERT INTO metric (%s) VALUES (%s) ON CONFLICT " +
+					"(submission_id) DO UPDATE SET %s",
+			COLUMNS.stream().map(Column::getName).collect(Collectors.joining(", ")),
+			COLUMNS.stream().map(column -> "?").collect(Collectors.joining(", ")),
+			COLUMNS.stream().skip(1).map(column -> column.getName() + " = EXCLUDED." + column.getName())
+					.collect(Collectors.joining(", ")));
+
+	private static final List<Column<Metric>> NGRAM_COLUMNS = Arrays.asList(
+			new Column<>("bi_gram", Types.VARCHAR, Metric::getBiGram),
+			new Column<>("tri_gram", Types.VARCHAR, Metric::getTriGram),
+			new Column<>("quadri_gram", Types.VARCHAR, Metric::getQuadriGram),
+			new Column<>("quinque_gram", Types.VARCHAR, Metric::getQuinqueGram),
+			new Column<>("submission_id", Types.BIGINT, Metric::getSubmissionId)
+	);
+
+	private static final String UPDATE_NGRAMS_SQL = String.format("UPDATE metric SET %s WHERE submission_id = ?",
+			NGRAM_COLUMNS.stream().limit(NGRAM_COLUMNS.size() - 1).map(column -> column.getName() + " = ?")
+					.collect(Collectors.joining(", ")));
+
+	/**
+	 * Sparse n-gram feature vectors go to their own table, created with
+	 * {@code CREATE TABLE ngram_feature (submission_id BIGINT NOT NULL, n SMALLINT NOT NULL, features BYTEA NOT NULL,
+	 * PRIMARY KEY (submission_id, n))}.
+	 */
+	private static final List<Column<FeatureVectorRow>> FEATURE_VECTOR_COLUMNS = Arrays.asList(
+			new Column<>("submission_id", Types.BIGINT, FeatureVectorRow::getSubmissionId),
+			new Column<>("n", Types.SMALLINT, FeatureVectorRow::getN),
+			new Column<>("features", Types.BINARY, FeatureVectorRow::getFeatures)
+	);
+
+	private static final String UPSERT_FEATURE_VECTOR_SQL = String.format("INSERT INTO ngram_feature (%s) VALUES " +
+					"(%s) ON CONFLICT (submission_id, n) DO UPDATE SET features = EXCLUDED.features",
+			FEATURE_VECTOR_COLUMNS.stream().map(Column::getName).collect(Collectors.joining(", ")),
+			FEATURE_VECTOR_COLUMNS.stream().map(column -> "?").collect(Collectors.joining(", ")));
+
+	private static final long SHUTDOWN_TIMEOUT_MINUTES = 1;
+
+	private final JdbcTemplate jdbcTemplate;
+
+	private final int batchSize;
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "metric-sink");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Held while a batch is taken from a buffer and written, so writes are serialized and a flush returns only once
+	 * every batch taken before it is written.
+	 */
+	private final Object writeLock = new Object();
+
+	private final SortedSet<Long> failedSubmissions = new ConcurrentSkipListSet<>();
+
+	private List<Metric> buffer;
+
+	private List<Metric> ngramBuffer;
+
+	private List<FeatureVectorRow> featureVectorBuffer;
+
+	public MetricSink(JdbcTemplate jdbcTemplate, @Value("${program.metric-sink.batch-size}") int batchSize,
+			@Value("${program.metric-sink.flush-interval-ms}") long flushIntervalMs) {
+
+		this.jdbcTemplate = jdbcTemplate;
+		this.batchSize = batchSize;
+		this.buffer = new ArrayList<>(batchSize);
+		this.ngramBuffer = new ArrayList<>(batchSize);
+		this.featureVectorBuffer = new ArrayList<>(batchSize);
+		scheduler.scheduleWithFixedDelay(this::scheduledFlush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public void accept(Metric metric) {
+
+		boolean full;
+		synchronized (this) {
+			buffer.add(metric);
+			full = buffer.size() >= batchSize;
+		}
+		if (full) {
+			synchronized (writeLock) {
+				List<Metric> batch;
+				synchronized (this) {
+					batch = swapBuffer();
+				}
+				write(UPSERT_SQL, COLUMNS, batch, Metric::getSubmissionId);
+			}
+		}
+	}
+
+	@Override
+	public void acceptNgramFeatures(Metric metric) {
+
+		boolean full;
+		synchronized (this) {
+			ngramBuffer.add(metric);
+			full = ngramBuffer.size() >= batchSize;
+		}
+		if (full) {
+			synchronized (writeLock) {
+				List<Metric> batch;
+				synchronized (this) {
+					batch = ngramBuffer;
+					ngramBuffer = new ArrayList<>(batchSize);
+				}
+				write(UPDATE_NGRAMS_SQL, NGRAM_COLUMNS, batch, Metric::getSubmissionId);
+			}
+		}
+	}
+
+	@Override
+	public void acceptFeatureVector(long submissionId, int n, SparseFeatureVector vector) {
+
+		boolean full;
+		synchronized (this) {
+			featureVectorBuffer.add(new FeatureVectorRow(submissionId, (short) n, vector.encode()));
+			full = featureVectorBuffer.size() >= batchSize;
+		}
+		if (full) {
+			synchronized (writeLock) {
+				List<FeatureVectorRow> batch;
+				synchronized (this) {
+					batch = featureVectorBuffer;
+					featureVectorBuffer = new ArrayList<>(batchSize);
+				}
+				write(UPSERT_FEATURE_VECTOR_SQL, FEATURE_VECTOR_COLUMNS, batch, FeatureVectorRow::getSubmissionId);
+			}
+		}
+	}
+
+	/**
+	 * Writes everything buffered, returning once every row accepted before the call is written.
+	 */
+	@Override
+	public void flush() {
+
+		synchronized (writeLock) {
+			List<Metric> batch;
+			List<Metric> ngramBatch;
+			List<FeatureVectorRow> featureVectorBatch;
+			synchronized (this) {
+				batch = swapBuffer();
+				ngramBatch = ngramBuffer;
+				ngramBuffer = new ArrayList<>(batchSize);
+				featureVectorBatch = featureVectorBuffer;
+				featureVectorBuffer = new ArrayList<>(batchSize);
+			}
+			write(UPSERT_SQL, COLUMNS, batch, Metric::getSubmissionId);
+			write(UPDATE_NGRAMS_SQL, NGRAM_COLUMNS, ngramBatch, Metric::getSubmissionId);
+			write(UPSERT_FEATURE_VECTOR_SQL, FEATURE_VECTOR_COLUMNS, featureVectorBatch,
+					FeatureVectorRow::getSubmissionId);
+		}
+	}
+
+	@Override
+	public SortedSet<Long> getFailedSubmissions() {
+
+		return Collections.unmodifiableSortedSet(failedSubmissions);
+	}
+
+	@PreDestroy
+	public void close() {
+
+		scheduler.shutdown();
+		try {
+			if (!scheduler.awaitTermination(SHUTDOWN_TIMEOUT_MINUTES, TimeUnit.MINUTES)) {
+				log.warn("Periodic flush still running after {} minutes, flushing anyway", SHUTDOWN_TIMEOUT_MINUTES);
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		flush();
+	}
+
+	/**
+	 * Periodic flush, which logs any error instead of throwing it, since that would cancel every later flush.
+	 */
+	private void scheduledFlush() {
+
+		try {
+			flush();
+		} catch (RuntimeException e) {
+			log.error("Error in the periodic flush of metrics", e);
+		}
+	}
+
+	private List<Metric> swapBuffer() {
+
+		List<Metric> batch = buffer;
+		buffer = new ArrayList<>(batchSize);
+		return batch;
+	}
+
+	private <T> void write(String sql, List<Column<T>> columns, List<T> batch, Function<T, Long> submissionId) {
+
+		if (batch.isEmpty()) {
+			return;
+		}
+		try {
+			jdbcTemplate.batchUpdate(sql, batch, batch.size(), (statement, row) -> setValues(statement, columns, row));
+			log.debug("Saved batch of [{}] metrics", batch.size());
+		} catch (RuntimeException e) {
+			// The batch is already out of its buffer, so every row that cannot be saved is recorded as failed
+			log.error("Error saving batch of [{}] metrics, retrying one by one", batch.size(), e);
+			for (T row : batch) {
+				try {
+					jdbcTemplate.update(sql, statement -> setValues(statement, columns, row));
+				} catch (RuntimeException ex) {
+					log.error("Error saving metrics of submission [{}]", submissionId.apply(row), ex);
+					failedSubmissions.add(submissionId.apply(row));
+				}
+			}
+		}
+	}
+
+	private <T> void setValues(PreparedStatement statement, List<Column<T>> columns, T row) throws SQLException {
+
+		for (int i = 0; i < columns.size(); ++i) {
+			Column<T> column = columns.get(i);
+			statement.setObject(i + 1, column.getValue().apply(row), column.getSqlType());
+		}
+	}
+
+	@lombok.Value
+	private static class Column<T> {
+
+		private String name;
+
+		private int sqlType;
+
+		private Function<T, Object> value;
+
+	}
+
+	@lombok.Value
+	private static class FeatureVectorRow {
+
+		private long submissionId;
+
+		private short n;
+
+		private byte[] features;
+
+	}
+
+}
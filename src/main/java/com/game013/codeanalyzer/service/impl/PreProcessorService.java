@@ -0,0 +1,293 @@
+package com.game013.codeanalyzer.service.impl;
+
+import com.game013.codeanalyzer.config.ExecutorConfiguration;
+import com.game013.codeanalyzer.exception.UnsupportedPreProcessorError;
+import com.game013.codeanalyzer.preprocessor.GccOutput;
+import com.game013.codeanalyzer.preprocessor.MacroPreprocessor;
+import com.game013.codeanalyzer.service.api.IPreProcessorService;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.commons.lang3.tuple.Pair;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pre-processes sources with macros. Macros are expanded in process, and only sources outside the subset supported
+ * by {@link MacroPreprocessor} go to gcc. Those are buffered and pre-processed in batches, a single gcc process per
+ * batch, with a limited number of concurrent processes so gcc does not take the cores of the parser.
+ */
+@Service
+@Slf4j
+public class PreProcessorService implements IPreProcessorService {
+
+	private final Executor cpuExecutor;
+
+	private final Executor ioExecutor;
+
+	private final Path scratchDirectory;
+
+	private final int batchSize;
+
+	private final long timeoutMs;
+
+	private final Semaphore gccPermits;
+
+	private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+		Thread thread = new Thread(runnable, "pre-processor");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private final AtomicLong inProcessCount = new AtomicLong();
+
+	private final AtomicLong fallbackCount = new AtomicLong();
+
+	private final AtomicLong batchCount = new AtomicLong();
+
+	private final AtomicLong timeoutCount = new AtomicLong();
+
+	private final AtomicLong failedCount = new AtomicLong();
+
+	private List<Job> buffer;
+
+	public PreProcessorService(@Qualifier(ExecutorConfiguration.CPU_EXECUTOR) Executor cpuExecutor,
+			@Qualifier(ExecutorConfiguration.IO_EXECUTOR) Executor ioExecutor,
+			@Value("${program.preprocessor.scratch-directory}") String scratchDirectory,
+			@Value("${program.preprocessor.batch-size}") int batchSize,
+			@Value("${program.preprocessor.linger-ms}") long lingerMs,
+			@Value("${program.preprocessor.timeout-ms}") long timeoutMs,
+			@Value("${program.preprocessor.max-concurrency}") int maxConcurrency) throws IOException {
+
+		this.cpuExecutor = cpuExecutor;
+		this.ioExecutor = ioExecutor;
+		this.scratchDirectory = Files.createDirectories(Paths.get(scratchDirectory));
+		this.batchSize = batchSize;
+		this.timeoutMs = timeoutMs;
+		this.gccPermits = new Semaphore(maxConcurrency);
+		this.buffer = new ArrayList<>(batchSize);
+		scheduler.scheduleWithFixedDelay(this::flush, lingerMs, lingerMs, TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public CompletableFuture<Pair<String, Boolean>> preProcess(String sourceCode, long submissionId) {
+
+		if (!sourceCode.contains("#define")) {
+			return CompletableFuture.completedFuture(Pair.of(sourceCode, false));
+		}
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				String code = MacroPreprocessor.process(sourceCode);
+				inProcessCount.incrementAndGet();
+				return CompletableFuture.completedFuture(code);
+			} catch (UnsupportedPreProcessorError e) {
+				log.debug("Submission {} falls back to gcc: {}", submissionId, e.getMessage());
+				fallbackCount.incrementAndGet();
+				return submit(new Job(submissionId, sourceCode));
+			}
+		}, cpuExecutor).thenCompose(code -> code).thenApply(code -> Pair.of(code, true));
+	}
+
+	@Override
+	public void logStatistics() {
+
+		flush();
+		log.info("Pre-processed sources: {} in process, {} with gcc in {} batches, {} timed out, {} failed",
+				inProcessCount.getAndSet(0), fallbackCount.getAndSet(0), batchCount.getAndSet(0),
+				timeoutCount.getAndSet(0), failedCount.getAndSet(0));
+	}
+
+	@PreDestroy
+	public void close() {
+
+		scheduler.shutdown();
+		flush();
+	}
+
+	private CompletableFuture<String> submit(Job job) {
+
+		List<Job> batch = null;
+		synchronized (this) {
+			buffer.add(job);
+			if (buffer.size() >= batchSize) {
+				batch = swapBuffer();
+			}
+		}
+		if (batch != null) {
+			dispatch(batch);
+		}
+		return job.result;
+	}
+
+	private void flush() {
+
+		List<Job> batch;
+		synchronized (this) {
+			batch = swapBuffer();
+		}
+		if (!batch.isEmpty()) {
+			dispatch(batch);
+		}
+	}
+
+	private List<Job> swapBuffer() {
+
+		List<Job> batch = buffer;
+		buffer = new ArrayList<>(batchSize);
+		return batch;
+	}
+
+	private void dispatch(List<Job> batch) {
+
+		ioExecutor.execute(() -> {
+			try {
+				run(batch);
+			} catch (RuntimeException e) {
+				log.error("Pre-processing batch finished with errors", e);
+				batch.forEach(job -> job.result.complete(job.sourceCode));
+			}
+		});
+	}
+
+	/**
+	 * Runs gcc over a batch. When the batch times out or gcc fails, its jobs are retried one by one so only the slow
+	 * or broken source is left without pre-processing, keeping its original code.
+	 */
+	private void run(List<Job> batch) {
+
+		GccResult result;
+		gccPermits.acquireUninterruptibly();
+		try {
+			result = runGcc(batch);
+		} finally {
+			gccPermits.release();
+		}
+		if (result == GccResult.COMPLETED) {
+			return;
+		}
+		Job job = batch.get(0);
+		if (batch.size() > 1) {
+			log.warn("Pre-processing batch of [{}] sources {}, retrying one by one", batch.size(),
+					result == GccResult.TIMED_OUT ? "timed out" : "failed");
+			batch.forEach(single -> run(Collections.singletonList(single)));
+		} else if (result == GccResult.TIMED_OUT) {
+			timeoutCount.incrementAndGet();
+			log.warn("Pre-processing of submission [{}] timed out after {} ms", job.submissionId, timeoutMs);
+			job.result.complete(job.sourceCode);
+		} else {
+			failedCount.incrementAndGet();
+			log.warn("Pre-processing of submission [{}] failed, keeping its original code", job.submissionId);
+			job.result.complete(job.sourceCode);
+		}
+	}
+
+	/**
+	 * Pre-processes a batch with a single gcc process. The jobs are only completed when gcc exits successfully and
+	 * its output has the code of every source: after an error gcc stops writing the output of the failing source
+	 * mid-line, which would mix it with the next one.
+	 */
+	private GccResult runGcc(List<Job> batch) {
+
+		long batchId = batchCount.incrementAndGet();
+		List<Path> files = new ArrayList<>(batch.size() + 2);
+		Path output = scratchDirectory.resolve(String.format("batch_%s_%s.out", Thread.currentThread().getId(), batchId));
+		Path errors = scratchDirectory.resolve(String.format("batch_%s_%s.err", Thread.currentThread().getId(), batchId));
+		try {
+			List<String> command = new ArrayList<>(batch.size() + 2);
+			command.add("gcc");
+			command.add("-E");
+			for (Job job : batch) {
+				Path file = scratchDirectory.resolve(job.fileName());
+				Files.write(file, job.sourceCode.getBytes(StandardCharsets.UTF_8));
+				files.add(file);
+				command.add(job.fileName());
+			}
+			files.add(output);
+			files.add(errors);
+
+			Process process = new ProcessBuilder(command).directory(scratchDirectory.toFile())
+					.redirectOutput(output.toFile()).redirectError(errors.toFile()).start();
+			if (!process.waitFor(timeoutMs * batch.size(), TimeUnit.MILLISECONDS)) {
+				process.destroyForcibly();
+				return GccResult.TIMED_OUT;
+			}
+			if (process.exitValue() != 0) {
+				log.debug("Pre-processing of batch {} exited with {}: {}", batchId, process.exitValue(),
+						new String(Files.readAllBytes(errors), StandardCharsets.UTF_8));
+				return GccResult.FAILED;
+			}
+
+			Map<String, String> sources = GccOutput.split(Files.readAllLines(output, StandardCharsets.UTF_8));
+			for (Job job : batch) {
+				if (!sources.containsKey(job.fileName())) {
+					log.debug("Output of batch {} has no code for submission [{}]", batchId, job.submissionId);
+					return GccResult.FAILED;
+				}
+			}
+			for (Job job : batch) {
+				job.result.complete(sources.get(job.fileName()));
+			}
+			log.debug("Pre-processing of batch {} with [{}] sources finished successfully", batchId, batch.size());
+			return GccResult.COMPLETED;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} finally {
+			for (Path file : files) {
+				try {
+					Files.deleteIfExists(file);
+				} catch (IOException e) {
+					log.warn("Could not delete pre-processing file {}", file, e);
+				}
+			}
+		}
+	}
+
+	private enum GccResult {
+
+		COMPLETED, TIMED_OUT, FAILED
+
+	}
+
+	private static class Job {
+
+		private final long submissionId;
+
+		private final String sourceCode;
+
+		private final CompletableFuture<String> result = new CompletableFuture<>();
+
+		private Job(long submissionId, String sourceCode) {
+
+			this.submissionId = submissionId;
+			this.sourceCode = sourceCode;
+		}
+
+		private String fileName() {
+
+			return String.format("tmp_%s.cpp", submissionId);
+		}
+
+	}
+
+}
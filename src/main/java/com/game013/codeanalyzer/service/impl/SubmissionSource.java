@@ -0,0 +1,121 @@
+package com.game013.codeanalyzer.service.impl;
+
+import com.game013.codeanalyzer.config.ExecutorConfiguration;
+import com.game013.codeanalyzer.model.Submission;
+import com.game013.codeanalyzer.repository.SubmissionRepository;
+import com.game013.codeanalyzer.service.api.ISubmissionSource;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.LongConsumer;
+
+/**
+ * Feeds submissions to the analysis one page at a time. The task of every submission in a page is started at once and
+ * the next page is fetched on the I/O pool while they run, so at most two pages are held in memory. The source code of
+ * every submission is released as soon as its task completes.
+ */
+@Service
+@Slf4j
+public class SubmissionSource implements ISubmissionSource {
+
+	private final SubmissionRepository submissionRepository;
+
+	private final Executor ioExecutor;
+
+	@Value("${program.submission.page-size}")
+	private int pageSize;
+
+	public SubmissionSource(SubmissionRepository submissionRepository,
+			@Qualifier(ExecutorConfiguration.IO_EXECUTOR) Executor ioExecutor) {
+
+		this.submissionRepository = submissionRepository;
+		this.ioExecutor = ioExecutor;
+	}
+
+	@Override
+	public void forEachPendingCppCode(String problemIndex, Function<Submission, CompletableFuture<?>> task) {
+
+		forEachPendingCppCode(problemIndex, 0L, task, lastId -> {
+		});
+	}
+
+	@Override
+	public void forEachPendingCppCode(String problemIndex, long fromId, Function<Submission, CompletableFuture<?>> task,
+			LongConsumer pageCompleted) {
+
+		forEach((lastId, pageable) -> submissionRepository.findCppCode(problemIndex, lastId, pageable), fromId, task,
+				pageCompleted);
+	}
+
+	@Override
+	public void forEachCppCode(Function<Submission, CompletableFuture<?>> task) {
+
+		forEachCppCode(0L, task, lastId -> {
+		});
+	}
+
+	@Override
+	public void forEachCppCode(long fromId, Function<Submission, CompletableFuture<?>> task,
+			LongConsumer pageCompleted) {
+
+		forEach(submissionRepository::findCppCode, fromId, task, pageCompleted);
+	}
+
+	@Override
+	public void forEachCompletedCode(Function<Submission, CompletableFuture<?>> task) {
+
+		forEach(submissionRepository::findCompletedCode, 0L, task, lastId -> {
+		});
+	}
+
+	private void forEach(BiFunction<Long, Pageable, List<Submission>> fetcher, long fromId,
+			Function<Submission, CompletableFuture<?>> task, LongConsumer pageCompleted) {
+
+		Pageable pageable = PageRequest.of(0, pageSize);
+		long processed = 0L;
+		List<Submission> submissions = fetcher.apply(fromId, pageable);
+		while (!submissions.isEmpty()) {
+			long lastId = submissions.get(submissions.size() - 1).getId();
+			CompletableFuture<List<Submission>> nextPage = submissions.size() < pageSize ?
+					CompletableFuture.completedFuture(Collections.emptyList()) :
+					CompletableFuture.supplyAsync(() -> fetcher.apply(lastId, pageable), ioExecutor);
+
+			CompletableFuture.allOf(submissions.stream().map(submission -> start(submission, task))
+					.toArray(CompletableFuture[]::new)).join();
+			processed += submissions.size();
+			log.info("Processed [{}] submissions up to id [{}]", processed, lastId);
+			pageCompleted.accept(lastId);
+
+			submissions = nextPage.join();
+		}
+	}
+
+	private CompletableFuture<?> start(Submission submission, Function<Submission, CompletableFuture<?>> task) {
+
+		CompletableFuture<?> future;
+		try {
+			future = task.apply(submission);
+		} catch (RuntimeException e) {
+			future = new CompletableFuture<>();
+			future.completeExceptionally(e);
+		}
+		return future.handle((result, e) -> {
+			if (e != null) {
+				log.error("Error processing submission [{}]", submission.getId(), e);
+			}
+			submission.setSourceCode(null);
+			return null;
+		});
+	}
+
+}
@@ -0,0 +1,167 @@
+package com.game013.codeanalyzer.cache;
+
+import com.game013.codeanalyzer.constant.MetricStatus;
+import com.game013.codeanalyzer.model.Metric;
+import com.game013.codeanalyzer.ngram.NgramExtractor;
+import com.game013.codeanalyzer.ngram.NgramSegmentStore;
+import com.game013.codeanalyzer.service.impl.AnalysisCache;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CacheTests {
+
+	private static final int[] TYPES = {38, 125, 78, 79, 82, 52, 126, 121, 83, 38, 125, 78};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void normalizesLineBreaks() {
+
+		assertEquals("int a;\nint b;", ContentKey.normalize("int a;\r\nint b;\r\n\n"));
+		assertEquals(ContentKey.of("int a;\nint b;"), ContentKey.of("int a;\r\nint b;\r\n"));
+		assertNotEquals(ContentKey.of("int a;"), ContentKey.of("int b;"));
+		// Lone CRs do not end directives, and line breaks are part of raw string literals
+		assertEquals("#define A 1\rint a;", ContentKey.normalize("#define A 1\rint a;\n"));
+		String raw = "auto s = R\"(a\r\nb)\";\r\n\n";
+		assertEquals(raw, ContentKey.normalize(raw));
+	}
+
+	@Test
+	public void readsWrittenEntries() throws Exception {
+
+		Metric metric = metric(MetricStatus.COMPLETED);
+		NgramSegmentStore.Record nGrams = NgramSegmentStore.Record.of(new NgramExtractor(2, 3).extract(TYPES));
+		CachedAnalysis read = roundTrip(new CachedAnalysis(metric, nGrams));
+		assertEquals(metric.toBuilder().submissionId(7L).build(), read.getMetric(7L));
+		assertNull(read.getMetric(7L).getBranchFactor());
+		assertEquals(nGrams.buffer(), read.getNgrams().buffer());
+
+		CachedAnalysis overBudget = roundTrip(new CachedAnalysis(metric(MetricStatus.BUDGET_EXCEEDED), nGrams));
+		assertFalse(overBudget.hasMetric());
+		assertNotNull(overBudget.getNgrams());
+	}
+
+	@Test
+	public void savesEntriesInDirectory() throws Exception {
+
+		Path root = folder.newFolder().toPath();
+		CacheDirectory directory = new CacheDirectory(root);
+		ContentKey key = ContentKey.of("int main() {}");
+		assertNull(directory.find(key));
+
+		directory.save(key, new CachedAnalysis(metric(MetricStatus.COMPLETED), null));
+		directory.save(key, new CachedAnalysis(null,
+				NgramSegmentStore.Record.of(new NgramExtractor(2, 3).extract(TYPES))));
+		// A metric over budget is not saved and does not replace the stored one
+		directory.save(key, new CachedAnalysis(metric(MetricStatus.BUDGET_EXCEEDED), null));
+
+		CachedAnalysis stored = directory.find(key);
+		assertEquals(MetricStatus.COMPLETED, stored.getMetric(1L).getStatus());
+		assertNotNull(stored.getNgrams());
+		try (Stream<Path> files = Files.walk(root)) {
+			assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+		}
+	}
+
+	@Test
+	public void keepsResultsSavedConcurrently() throws Exception {
+
+		CacheDirectory directory = new CacheDirectory(folder.newFolder().toPath());
+		NgramSegmentStore.Record nGrams = NgramSegmentStore.Record.of(new NgramExtractor(2, 3).extract(TYPES));
+		List<ContentKey> keys = IntStream.range(0, 200).mapToObj(i -> ContentKey.of("int a" + i + ";"))
+				.collect(Collectors.toList());
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			CountDownLatch start = new CountDownLatch(1);
+			Future<?> metrics = executor.submit(() -> {
+				start.await();
+				keys.forEach(key -> directory.save(key, new CachedAnalysis(metric(MetricStatus.COMPLETED), null)));
+				return null;
+			});
+			Future<?> ngrams = executor.submit(() -> {
+				start.await();
+				keys.forEach(key -> directory.save(key, new CachedAnalysis(null, nGrams)));
+				return null;
+			});
+			start.countDown();
+			metrics.get();
+			ngrams.get();
+		} finally {
+			executor.shutdown();
+		}
+		for (ContentKey key : keys) {
+			CachedAnalysis stored = directory.find(key);
+			assertTrue(stored.hasMetric());
+			assertNotNull(stored.getNgrams());
+		}
+	}
+
+	@Test
+	public void evictsLeastRecentlyUsedEntries() {
+
+		int weight = new CachedAnalysis(metric(MetricStatus.COMPLETED), null).weight();
+		AnalysisCache cache = new AnalysisCache(2 * weight, "", Runnable::run);
+		ContentKey first = cache.key("int a;");
+		ContentKey second = cache.key("int b;");
+		ContentKey third = cache.key("int c;");
+		cache.putMetric(first, metric(MetricStatus.COMPLETED));
+		cache.putMetric(second, metric(MetricStatus.COMPLETED));
+		assertNotNull(cache.findMetric(first, 1L));
+		cache.putMetric(third, metric(MetricStatus.COMPLETED));
+
+		assertNotNull(cache.findMetric(first, 1L));
+		assertNull(cache.findMetric(second, 2L));
+		assertNotNull(cache.findMetric(third, 3L));
+	}
+
+	@Test
+	public void mergesResultsOfTheSameSource() {
+
+		AnalysisCache cache = new AnalysisCache(1 << 20, "", Runnable::run);
+		ContentKey key = cache.key("int main() {}");
+		NgramSegmentStore.Record nGrams = NgramSegmentStore.Record.of(new NgramExtractor(2, 3).extract(TYPES));
+		cache.putMetric(key, metric(MetricStatus.COMPLETED));
+		cache.putNgrams(key, nGrams);
+
+		assertEquals(Long.valueOf(9L), cache.findMetric(key, 9L).getSubmissionId());
+		assertEquals(nGrams, cache.findNgrams(key));
+	}
+
+	private Metric metric(MetricStatus status) {
+
+		return Metric.builder().submissionId(1L).status(status).requirePreProcessing(false).invalidFields(0)
+				.astNodeCount(42.0).entropy(3.5).linesOfCode(10.0).build();
+	}
+
+	private CachedAnalysis roundTrip(CachedAnalysis entry) throws Exception {
+
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		entry.write(new DataOutputStream(bytes));
+		return CachedAnalysis.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+	}
+
+}
@@ -0,0 +1,125 @@
+package com.game013.codeanalyzer.checkpoint;
+
+import com.game013.codeanalyzer.constant.CheckpointMode;
+import com.game013.codeanalyzer.ngram.NgramCounts;
+import com.game013.codeanalyzer.ngram.NgramExtractor;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CheckpointTests {
+
+	private static final int[] TYPES = {38, 125, 78, 79, 82, 52, 126, 121, 83, 38, 125, 78};
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void loadsSavedCheckpoint() throws Exception {
+
+		Path directory = folder.newFolder().toPath();
+		JobCheckpoint empty = JobCheckpoint.load(directory, 0L);
+		assertFalse(empty.exists());
+		assertEquals(0L, empty.getLastId());
+		assertEquals(-1L, empty.getSegmentLocation());
+
+		empty.save(42L, 1024L, true, null);
+		JobCheckpoint loaded = JobCheckpoint.load(directory, 0L);
+		assertTrue(loaded.exists());
+		assertEquals(42L, loaded.getLastId());
+		assertEquals(1024L, loaded.getSegmentLocation());
+		assertTrue(loaded.isCompleted());
+		assertNull(loaded.loadCounts(2, 3));
+	}
+
+	@Test
+	public void loadsSavedCounts() throws Exception {
+
+		Path directory = folder.newFolder().toPath();
+		NgramCounts counts = new NgramExtractor(2, 3).extract(TYPES);
+		JobCheckpoint.load(directory, 0L).save(7L, -1L, false, counts);
+
+		JobCheckpoint loaded = JobCheckpoint.load(directory, 0L);
+		NgramCounts read = loaded.loadCounts(2, 3);
+		for (int n = 2; n <= 3; ++n) {
+			int order = n;
+			assertEquals(counts.get(n).size(), read.get(n).size());
+			counts.get(n).forEach((key, count) -> assertEquals(count, read.get(order).get(key)));
+		}
+		assertNull(loaded.loadCounts(2, 4));
+		assertNull(loaded.loadCounts(1, 3));
+	}
+
+	@Test
+	public void deletesCountsOfOlderCheckpoints() throws Exception {
+
+		Path directory = folder.newFolder().toPath();
+		JobCheckpoint checkpoint = JobCheckpoint.load(directory, 0L);
+		checkpoint.save(7L, -1L, false, new NgramExtractor(2, 3).extract(TYPES));
+		checkpoint.save(9L, -1L, false, new NgramExtractor(2, 3).extract(TYPES));
+		assertEquals(2, countFiles(directory));
+		assertTrue(Files.exists(directory.resolve("counts-9-bigram.ngh")));
+		assertTrue(Files.exists(directory.resolve("counts-9-trigram.ngh")));
+	}
+
+	@Test
+	public void replacesCountsOfTheSameSubmission() throws Exception {
+
+		Path directory = folder.newFolder().toPath();
+		JobCheckpoint checkpoint = JobCheckpoint.load(directory, 0L);
+		checkpoint.save(7L, -1L, false, new NgramExtractor(2, 3).extract(Arrays.copyOf(TYPES, 4)));
+		NgramCounts counts = new NgramExtractor(2, 3).extract(TYPES);
+		checkpoint.save(7L, -1L, true, counts);
+
+		NgramCounts read = JobCheckpoint.load(directory, 0L).loadCounts(2, 3);
+		assertEquals(counts.get(3).size(), read.get(3).size());
+		assertEquals(2, countFiles(directory));
+		try (Stream<Path> files = Files.list(directory)) {
+			assertTrue(files.noneMatch(file -> file.toString().endsWith(".tmp")));
+		}
+	}
+
+	@Test
+	public void clearsCheckpoint() throws Exception {
+
+		Path directory = folder.newFolder().toPath();
+		JobCheckpoint checkpoint = JobCheckpoint.load(directory, 0L);
+		checkpoint.save(7L, 512L, true, new NgramExtractor(2, 3).extract(TYPES));
+		checkpoint.clear();
+		assertFalse(checkpoint.exists());
+		assertEquals(0L, checkpoint.getLastId());
+		assertEquals(-1L, checkpoint.getSegmentLocation());
+		assertFalse(checkpoint.isCompleted());
+		assertEquals(0, countFiles(directory));
+		assertFalse(JobCheckpoint.load(directory, 0L).exists());
+	}
+
+	@Test
+	public void resumesByMode() {
+
+		assertFalse(CheckpointMode.FRESH.resumes(false));
+		assertFalse(CheckpointMode.FRESH.resumes(true));
+		assertTrue(CheckpointMode.RESUME.resumes(false));
+		assertFalse(CheckpointMode.RESUME.resumes(true));
+		assertTrue(CheckpointMode.INCREMENTAL.resumes(false));
+		assertTrue(CheckpointMode.INCREMENTAL.resumes(true));
+	}
+
+	private static long countFiles(Path directory) throws Exception {
+
+		try (Stream<Path> files = Files.list(directory)) {
+			return files.filter(file -> file.getFileName().toString().startsWith("counts-")).count();
+		}
+	}
+
+}
@@ -0,0 +1,67 @@
+package com.game013.codeanalyzer.export;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ExportTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void readsWrittenColumns() throws Exception {
+
+		Path directory = folder.newFolder().toPath();
+		LinkedHashMap<String, ColumnType> columns = new LinkedHashMap<>();
+		columns.put("submission_id", ColumnType.LONG);
+		columns.put("entropy", ColumnType.DOUBLE);
+		columns.put("bi_gram_0", ColumnType.INT);
+		try (ColumnarWriter writer = new ColumnarWriter(directory, columns)) {
+			writer.dictionary("bi_gram_0", Arrays.asList("ZERO", "ONE", "TWO"));
+			for (int i = 0; i < 1000; ++i) {
+				writer.putLong(1_000_000_000_000L + i).putDouble(i == 7 ? Double.NaN : i / 4.0).putInt(i % 3);
+				writer.endRow();
+			}
+			assertFalse(Files.exists(directory.resolve(ColumnarWriter.SCHEMA_FILE)));
+			writer.finish();
+		}
+
+		ColumnarReader reader = ColumnarReader.open(directory);
+		assertEquals(1000, reader.getRows());
+		assertEquals(columns, reader.getColumns());
+		LongBuffer ids = reader.longs("submission_id");
+		DoubleBuffer entropy = reader.doubles("entropy");
+		IntBuffer features = reader.ints("bi_gram_0");
+		assertEquals(1000, ids.remaining());
+		assertEquals(1_000_000_000_999L, ids.get(999));
+		assertTrue(Double.isNaN(entropy.get(7)));
+		assertEquals(2.5, entropy.get(10), 0.0);
+		assertEquals(2, features.get(500));
+		assertEquals("TWO", reader.getDictionary("bi_gram_0").get(features.get(500)));
+		assertTrue(reader.getDictionary("entropy").isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsValuesOfAnotherType() throws Exception {
+
+		LinkedHashMap<String, ColumnType> columns = new LinkedHashMap<>();
+		columns.put("submission_id", ColumnType.LONG);
+		try (ColumnarWriter writer = new ColumnarWriter(folder.newFolder().toPath(), columns)) {
+			writer.putInt(1);
+		}
+	}
+
+}
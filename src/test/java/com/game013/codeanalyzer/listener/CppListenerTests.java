@@ -0,0 +1,88 @@
+package com.game013.codeanalyzer.listener;
+
+import com.game013.codeanalyzer.constant.MetricFailureCause;
+import com.game013.codeanalyzer.constant.MetricField;
+import com.game013.codeanalyzer.model.Metric;
+import com.game013.codeanalyzer.pipeline.EntropyStage;
+import com.game013.codeanalyzer.pipeline.ParseStage;
+import com.game013.codeanalyzer.pipeline.TokenBuffer;
+import com.game013.codeanalyzer.pipeline.TokenDistributionStage;
+import org.antlr.v4.runtime.tree.ParseTreeWalker;
+import org.apache.commons.lang3.tuple.Pair;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CppListenerTests {
+
+	@Test
+	public void marksInvalidFields() {
+
+		Metric valid = analyze("int main() {\n\tint x = 1;\n\treturn x;\n}\n");
+		assertEquals(0, (int) valid.getInvalidFields());
+		assertTrue(valid.isValid());
+
+		Metric noFunctions = analyze("int x = 1;\n");
+		int invalidFields = noFunctions.getInvalidFields();
+		assertTrue(MetricField.CYCLOMATIC_COMPLEXITY.in(invalidFields));
+		assertTrue(MetricFailureCause.NO_FUNCTIONS.explains(invalidFields));
+		assertEquals(0, MetricFailureCause.unexplained(invalidFields));
+		assertEquals(MetricField.invalidFields(noFunctions), invalidFields);
+		assertFalse(noFunctions.isValid());
+	}
+
+	/**
+	 * Values computed by the original analysis, which lexed the source once per stage and parsed straight from the
+	 * lexer, for 10 lines of at most 20 chars.
+	 */
+	@Test
+	public void keepsOriginalMetrics() throws Exception {
+
+		assertMetric("declarations.cpp", 85.0, Double.POSITIVE_INFINITY, Double.NaN, 0.3, 1.0, 2.1, 0.0, 0.0,
+				1.1411764705882352, Double.NaN, 2.5220552088742, 2.5, 90.0, 36.0, 2.0, 10.0, -3.044522437723423,
+				-1.9459101490553135, 0.0, 2.0, 1.0, 20.0, 7.898917186688698);
+		assertMetric("gcd.cpp", 774.0, 109.0, 0.5, 3.6, 1.75, 21.8, 0.0, 1.2, 1.1614987080103358, 3.0,
+				3.8535669608820253, 43.875, 26204.36352584167, 597.2504507314341, 18.0, 10.0, -3.1872704854528697,
+				-1.800976124332979, 3.0, 6.0, 4.0, 20.0, -12.619615315460365);
+		// Members, literals, templates, casts and shifts exercise the keys of the Halstead operators and operands
+		assertMetric("point.cpp", 421.0, 62.333333333333336, 1.0, 2.6, 1.6923076923076923, 18.7, 0.2, 1.1,
+				1.2137767220902613, 1.6666666666666667, 3.8571720064157513, 32.85714285714286, 11769.527585752434,
+				358.2030134794219, 17.0, 10.0, -3.0338840395183673, -1.9730120788331045, 2.0, 6.0, 5.0, 20.0,
+				-4.73645745444455);
+		assertMetric("templates.cpp", 916.0, 188.0, 0.5, 3.9, 4.512820512820513, 37.6, 0.1, 1.1, 1.1670305676855894,
+				2.0, 4.241284399198196, 34.44444444444444, 24754.631846054606, 718.6828600467467, 15.0, 10.0,
+				-3.732364566053675, -2.2660274972602483, 2.0, 5.0, 7.0, 20.0, -17.208460980339936);
+	}
+
+	private void assertMetric(String source, double... expected) throws Exception {
+
+		String sourceCode = new String(Files.readAllBytes(Paths.get(getClass().getResource("/listener/" + source)
+				.toURI())), StandardCharsets.UTF_8);
+		TokenBuffer tokens = TokenBuffer.lex(sourceCode);
+		Pair<Double, Double> keywords = TokenDistributionStage.keywords().apply(tokens);
+		Pair<Double, Double> operators = TokenDistributionStage.operators().apply(tokens);
+		CppListener listener = new CppListener(1L, 10, 20, new EntropyStage().apply(tokens), keywords.getLeft(),
+				keywords.getRight(), operators.getLeft(), operators.getRight(), tokens);
+		ParseTreeWalker.DEFAULT.walk(listener, new ParseStage(true).apply(tokens));
+		Metric metric = listener.getResult();
+		for (MetricField field : MetricField.values()) {
+			assertEquals(source + " " + field, expected[field.ordinal()], field.get(metric), 1e-9);
+		}
+	}
+
+	private Metric analyze(String sourceCode) {
+
+		TokenBuffer tokens = TokenBuffer.lex(sourceCode);
+		CppListener listener = new CppListener(1L, sourceCode.split("\n").length, 20, 1.0, 4.0, 2.0, 6.0, 3.0,
+				tokens);
+		ParseTreeWalker.DEFAULT.walk(listener, new ParseStage(true).apply(tokens));
+		return listener.getResult();
+	}
+
+}
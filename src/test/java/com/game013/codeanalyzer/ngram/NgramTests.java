@@ -0,0 +1,252 @@
+package com.game013.codeanalyzer.ngram;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class NgramTests {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void countsLikeHashMap() {
+
+		Random random = new Random(13);
+		LongIntHashMap map = new LongIntHashMap();
+		Map<Long, Integer> expected = new HashMap<>();
+		for (int i = 0; i < 100_000; ++i) {
+			long key = 1 + random.nextInt(5_000);
+			map.add(key, 1);
+			expected.merge(key, 1, Integer::sum);
+		}
+
+		assertEquals(expected.size(), map.size());
+		expected.forEach((key, value) -> assertEquals((int) value, map.get(key)));
+		assertEquals(0, map.get(10_000L));
+	}
+
+	@Test
+	public void topKeysOrderedByAscendingValue() {
+
+		LongIntHashMap map = new LongIntHashMap();
+		for (long key = 1; key <= 10; ++key) {
+			map.add(key, (int) key * 10);
+		}
+
+		assertArrayEquals(new long[]{8L, 9L, 10L}, map.topKeys(3));
+		assertEquals(10, map.topKeys(50).length);
+	}
+
+	@Test
+	public void packsAndRendersNgrams() {
+
+		int[] types = {125, 78, 79, 121};
+		long key = NgramKey.pack(types, 1, 3);
+
+		assertEquals(3, NgramKey.order(key));
+		assertEquals(78, NgramKey.tokenAt(key, 0));
+		assertEquals("78|79|121", NgramKey.render(key));
+	}
+
+	@Test
+	public void extractsEveryOrderInOnePass() {
+
+		int[] types = {38, 125, 78, 79, 82, 52, 126, 121, 83};
+		NgramCounts counts = new NgramExtractor(2, 5).extract(types);
+
+		for (int n = 2; n <= 5; ++n) {
+			LongIntHashMap expected = new LongIntHashMap();
+			for (int i = 0; i + n <= types.length; ++i) {
+				expected.add(NgramKey.pack(types, i, n), 1);
+			}
+			LongIntHashMap actual = counts.get(n);
+			assertEquals(expected.size(), actual.size());
+			expected.forEach((key, value) -> assertEquals(value, actual.get(key)));
+		}
+	}
+
+	@Test
+	public void removesKeepingProbeSequences() {
+
+		LongIntHashMap map = new LongIntHashMap();
+		for (long key = 1; key <= 1_000; ++key) {
+			map.put(key, (int) key);
+		}
+		for (long key = 1; key <= 1_000; key += 2) {
+			map.remove(key);
+		}
+
+		assertEquals(500, map.size());
+		for (long key = 1; key <= 1_000; ++key) {
+			assertEquals(key % 2 == 0 ? (int) key : 0, map.get(key));
+		}
+	}
+
+	@Test
+	public void heavyHittersOverestimateWithinBound() {
+
+		Random random = new Random(7);
+		LongIntHashMap exact = new LongIntHashMap();
+		SpaceSaving left = new SpaceSaving(0.01);
+		SpaceSaving right = new SpaceSaving(0.01);
+		for (int i = 0; i < 200_000; ++i) {
+			long key = 1 + (long) (Math.pow(random.nextDouble(), 3) * 2_000);
+			exact.add(key, 1);
+			(i % 2 == 0 ? left : right).offer(key, 1);
+		}
+		SpaceSaving merged = left.merge(right);
+
+		assertEquals(200_000, merged.getTotalWeight());
+		for (long key : exact.topKeys(10)) {
+			assertTrue(merged.estimate(key) >= exact.get(key));
+			assertTrue(merged.estimate(key) - exact.get(key) <= merged.getErrorBound());
+		}
+	}
+
+	@Test
+	public void encodesHistogramsAndJoinsVocabulary() {
+
+		int[] types = {38, 125, 78, 79, 82, 52, 126, 121, 83, 38, 125, 78};
+		LongIntHashMap histogram = new NgramExtractor(3, 3).extract(types).get(3);
+		ByteBuffer encoded = NgramHistogramCodec.encode(3, histogram);
+
+		assertEquals(3, NgramHistogramCodec.order(encoded));
+		LongIntHashMap decoded = NgramHistogramCodec.decode(encoded.duplicate());
+		assertEquals(histogram.size(), decoded.size());
+		histogram.forEach((key, count) -> assertEquals(count, decoded.get(key)));
+
+		long[] vocabulary = {NgramKey.pack(types, 1, 3), NgramKey.pack(new int[]{1, 2, 3}, 0, 3),
+				NgramKey.pack(types, 0, 3)};
+		assertArrayEquals(new int[]{1, 0, 2}, new FeatureIndex(vocabulary).features(encoded.duplicate()));
+	}
+
+	@Test
+	public void savesSelectedVocabulary() throws Exception {
+
+		int[] types = {38, 125, 78, 79, 82, 52, 126, 121, 83, 38, 125, 78, 38, 125};
+		LongIntHashMap global = new NgramExtractor(2, 2).extract(types).get(2);
+		NgramVocabulary selected = NgramVocabulary.select(2, global, 3);
+		Path file = folder.newFile().toPath();
+		selected.write(file);
+
+		NgramVocabulary vocabulary = NgramVocabulary.read(file);
+		assertEquals(2, vocabulary.getOrder());
+		assertEquals(3, vocabulary.getRequested());
+		assertArrayEquals(selected.getKeys(), vocabulary.getKeys());
+		assertEquals(NgramKey.pack(types, 0, 2), vocabulary.getKeys()[2]);
+		assertEquals(3, vocabulary.getFrequencies()[2]);
+		ByteBuffer histogram = NgramHistogramCodec.encode(2, global);
+		assertEquals(3, vocabulary.index().features(histogram)[2]);
+	}
+
+	@Test
+	public void encodesSparseFeatureVectors() {
+
+		int[] dense = new int[100];
+		dense[3] = 2;
+		dense[64] = 300;
+		dense[99] = 1;
+		SparseFeatureVector vector = SparseFeatureVector.decode(SparseFeatureVector.of(dense).encode());
+
+		assertEquals(100, vector.getDimension());
+		assertArrayEquals(new int[]{3, 64, 99}, vector.getIndexes());
+		assertArrayEquals(new int[]{2, 300, 1}, vector.getValues());
+		assertArrayEquals(dense, vector.toDense());
+		assertEquals(0, SparseFeatureVector.decode(SparseFeatureVector.of(new int[5]).encode()).size());
+	}
+
+	@Test
+	public void storesHistogramsInSegments() throws Exception {
+
+		Path directory = folder.newFolder().toPath();
+		NgramExtractor extractor = new NgramExtractor(2, 3);
+		int[] types = {38, 125, 78, 79, 82, 52, 126, 121, 83};
+		try (NgramSegmentWriter writer = new NgramSegmentWriter(directory, 64, false)) {
+			for (long submissionId = 10; submissionId > 0; --submissionId) {
+				writer.append(submissionId, extractor.extract(Arrays.copyOf(types, (int) submissionId)));
+			}
+		}
+		try (NgramSegmentWriter writer = new NgramSegmentWriter(directory, 1024, true)) {
+			writer.append(3L, extractor.extract(types));
+		}
+
+		try (NgramSegmentStore store = NgramSegmentStore.open(directory)) {
+			assertEquals(10, store.size());
+			assertNull(store.find(11L, 2));
+			assertEquals(8, NgramHistogramCodec.decode(store.find(9L, 2)).size());
+			assertEquals(7, NgramHistogramCodec.decode(store.find(3L, 3)).size());
+			int[] records = {0};
+			store.scan((submissionId, record) -> {
+				assertEquals(3, NgramHistogramCodec.order(record.histogram(3)));
+				++records[0];
+			});
+			assertEquals(11, records[0]);
+		}
+	}
+
+	@Test
+	public void resumesFromCheckpoint() throws Exception {
+
+		Path directory = folder.newFolder().toPath();
+		NgramExtractor extractor = new NgramExtractor(2, 3);
+		int[] types = {38, 125, 78, 79, 82, 52, 126, 121, 83};
+		long checkpoint;
+		try (NgramSegmentWriter writer = new NgramSegmentWriter(directory, 64, false)) {
+			for (long submissionId = 1; submissionId <= 4; ++submissionId) {
+				writer.append(submissionId, extractor.extract(Arrays.copyOf(types, (int) submissionId + 2)));
+			}
+			checkpoint = writer.checkpoint();
+			for (long submissionId = 5; submissionId <= 8; ++submissionId) {
+				writer.append(submissionId, extractor.extract(types));
+			}
+		}
+		try (NgramSegmentWriter writer = NgramSegmentWriter.resume(directory, 64, checkpoint)) {
+			writer.append(5L, extractor.extract(Arrays.copyOf(types, 4)));
+		}
+
+		try (NgramSegmentStore store = NgramSegmentStore.open(directory)) {
+			assertEquals(5, store.size());
+			assertNull(store.find(6L, 2));
+			assertEquals(3, NgramHistogramCodec.decode(store.find(5L, 2)).size());
+			int[] records = {0};
+			store.scan((submissionId, record) -> ++records[0]);
+			assertEquals(5, records[0]);
+		}
+	}
+
+	@Test
+	public void appendsEncodedRecords() throws Exception {
+
+		Path directory = folder.newFolder().toPath();
+		int[] types = {38, 125, 78, 79, 82, 52, 126, 121, 83};
+		NgramCounts counts = new NgramExtractor(2, 4).extract(types);
+		NgramSegmentStore.Record record = NgramSegmentStore.Record.of(counts);
+		NgramCounts decoded = record.counts();
+		assertEquals(2, decoded.getMinN());
+		assertEquals(4, decoded.getMaxN());
+		counts.get(3).forEach((key, count) -> assertEquals(count, decoded.get(3).get(key)));
+
+		try (NgramSegmentWriter writer = new NgramSegmentWriter(directory, 1024, false)) {
+			writer.append(5L, record);
+			writer.append(6L, record);
+		}
+		try (NgramSegmentStore store = NgramSegmentStore.open(directory)) {
+			assertEquals(2, store.size());
+			assertEquals(6, NgramHistogramCodec.decode(store.find(6L, 4)).size());
+		}
+	}
+
+}
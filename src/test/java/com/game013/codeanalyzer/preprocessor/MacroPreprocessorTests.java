@@ -0,0 +1,57 @@
+package com.game013.codeanalyzer.preprocessor;
+
+import com.game013.codeanalyzer.exception.UnsupportedPreProcessorError;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class MacroPreprocessorTests {
+
+	@Test
+	public void expandsMacrosAndKeepsLines() {
+
+		String source = "#include <bits/stdc++.h>\n" +
+				"#define ll long long\n" +
+				"#define FOR(i, a, b) for (int i = (a); i < (b); ++i)\n" +
+				"#define dbg(...) cerr << #__VA_ARGS__ << \" = \" << __VA_ARGS__\n" +
+				"#define P +\n" +
+				"ll m = INT_MAX;\n" +
+				"FOR(i, 0,\n" +
+				"  n) dbg(i, m) << i P+1;\n";
+
+		assertEquals("\n\n\n\n\n" +
+				"long long m = 0x7fffffff;\n" +
+				"for (int i = (0); i < (n); ++i)\n" +
+				" cerr << \"i, m\" << \" = \" << i, m << i + +1;\n", MacroPreprocessor.process(source));
+	}
+
+	@Test
+	public void evaluatesConditionals() {
+
+		String source = "#define N 10\n" +
+				"#ifdef LOCAL\n" +
+				"local\n" +
+				"#elif N > 5 && !defined(M)\n" +
+				"big\n" +
+				"#else\n" +
+				"small\n" +
+				"#endif\n" +
+				"#undef N\n" +
+				"N\n";
+
+		assertEquals("\n\n\n\nbig\n\n\n\n\nN\n", MacroPreprocessor.process(source));
+	}
+
+	@Test(expected = UnsupportedPreProcessorError.class)
+	public void rejectsTokenPasting() {
+
+		MacroPreprocessor.process("#define CAT(a, b) a ## b\nCAT(x, y)\n");
+	}
+
+	@Test(expected = UnsupportedPreProcessorError.class)
+	public void rejectsUnknownHeaderMacros() {
+
+		MacroPreprocessor.process("#include <cassert>\n#define N 5\nassert(N > 0);\n");
+	}
+
+}
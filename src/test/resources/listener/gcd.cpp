@@ -0,0 +1,28 @@
+#include <iostream>
+using namespace std;
+
+int gcd(int a, int b) {
+	while (b != 0) {
+		int t = a % b;
+		a = b;
+		b = t;
+	}
+	return a;
+}
+
+int main() {
+	int n;
+	cin >> n;
+	long long sum = 0;
+	for (int i = 0; i < n; ++i) {
+		int v;
+		cin >> v;
+		if (v > 0 && v % 2 == 0) {
+			sum += gcd(v, n);
+		} else {
+			sum -= v;
+		}
+	}
+	cout << sum << endl;
+	return 0;
+}
@@ -0,0 +1,14 @@
+struct Point {
+	double x, y;
+	Point(double x, double y) : x(x), y(y) {}
+	double dot(const Point &o) const { return x * o.x + y * o.y; }
+};
+
+int scale(int v, int s) {
+	v /= s;
+	switch (v) {
+	case 0: return 1;
+	default: break;
+	}
+	return v << 1;
+}
@@ -0,0 +1,21 @@
+#include <vector>
+#include <string>
+
+template <typename T>
+T largest(const std::vector<T> &values) {
+	T best = values[0];
+	for (const T &value : values) {
+		best = value > best ? value : best;
+	}
+	return best;
+}
+
+int main() {
+	std::vector<int> numbers = {3, 1, 4, 1, 5, 9, 2, 6};
+	std::string name = "numbers";
+	int *first = &numbers[0];
+	long total = static_cast<long>(*first) << 2;
+	total = total >> 1;
+	double ratio = (double) largest(numbers) / name.size();
+	return ratio > 1.5 && total != 0 ? 0 : 1;
+}